@@ -16,23 +16,14 @@ import com.mashape.unirest.request.body.MultipartBody;
 import java.io.File;
 import java.io.IOException;
 import java.net.HttpCookie;
-import java.security.KeyManagementException;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.logging.Level;
 import java.util.stream.Collectors;
 import java.net.URI;
 import java.net.URISyntaxException;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.http.HttpHost;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.conn.ssl.NoopHostnameVerifier;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.ssl.SSLContextBuilder;
 import org.testng.TestException;
 
 /**
@@ -55,11 +46,8 @@ public abstract class APIOperations {
 
   private final Logger logger = Logger.getLogger(this.getClass());
 
-  //For testing purposes set  proxyHostName and proxyPort in order to sniff http requests
-  private final String proxyHostName = "";
-  private final Integer proxyPort = -1;
-
-  private HttpClientBuilder httpClientBuilder;
+  // Headers added to every request of this instance, instead of the Unirest global default headers
+  private final Map<String, String> defaultHeaders = new LinkedHashMap<>();
   /**
    * The Url.
    */
@@ -69,8 +57,8 @@ public abstract class APIOperations {
    * Instantiates a new Api operations.
    */
   public APIOperations() {
-
-    initClient();
+    HttpClientPool.install();
+    HttpClientPool.reset();
   }
 
   /**
@@ -82,32 +70,30 @@ public abstract class APIOperations {
     this.url = normaliseUrl(url);
   }
 
-  private void initClient() {
-    if (StringUtils.isNotEmpty(proxyHostName) && proxyPort > 0) {
-      Unirest.setProxy(new HttpHost(proxyHostName, proxyPort));
-    }
-    Unirest.clearDefaultHeaders();
-
-    try {
-      httpClientBuilder = HttpClients.custom()
-          .setSSLContext(new SSLContextBuilder()
-          .loadTrustMaterial(null, (x509Certificates, s) -> true).build())
-          .setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE);
-
-      Unirest.setHttpClient(httpClientBuilder.build());
-    } catch (NoSuchAlgorithmException | KeyStoreException | KeyManagementException ex) {
-      java.util.logging.Logger.getLogger(APIOperations.class.getName()).log(Level.SEVERE, null, ex);
-    }
+  /**
+   * Sets a header added to every request of this instance.
+   *
+   * @param header the header name
+   * @param value  the header value
+   */
+  protected void setDefaultHeader(String header, String value) {
+    defaultHeaders.put(header, value);
   }
 
-  private void initClient(int connectionTimeout, int socketTimeout) {
-    initClient();
-
-    httpClientBuilder = httpClientBuilder.setDefaultRequestConfig(
-        RequestConfig.custom().setConnectTimeout(connectionTimeout).setSocketTimeout(
-            socketTimeout).build());
+  /**
+   * Gets the headers added to every request of this instance.
+   *
+   * @return the default headers
+   */
+  public Map<String, String> getDefaultHeaders() {
+    return Collections.unmodifiableMap(defaultHeaders);
+  }
 
-    Unirest.setHttpClient(httpClientBuilder.build());
+  private <T extends HttpRequest> T withDefaultHeaders(T request) {
+    for (Map.Entry<String, String> header : defaultHeaders.entrySet()) {
+      request.header(header.getKey(), header.getValue());
+    }
+    return request;
   }
 
   /**
@@ -149,8 +135,7 @@ public abstract class APIOperations {
    * Disable unirest cookie state management.
    */
   public void disableUnirestCookieStateManagement() {
-    httpClientBuilder = httpClientBuilder.disableCookieManagement();
-    Unirest.setHttpClient(httpClientBuilder.build());
+    HttpClientPool.disableCookieManagement();
   }
 
   /**
@@ -236,10 +221,10 @@ public abstract class APIOperations {
    */
   public void addHeadersToRequest(Map<String, String> headers) {
     headers = VariablesTransformer.transformMap(headers);
-    Unirest.clearDefaultHeaders();
+    defaultHeaders.clear();
 
     for (String header : headers.keySet()) {
-      Unirest.setDefaultHeader(header, headers.get(header));
+      setDefaultHeader(header, headers.get(header));
     }
   }
 
@@ -319,7 +304,7 @@ public abstract class APIOperations {
     }
     request.queryString(Collections.<String, Object>unmodifiableMap(queryParams));
 
-    return request;
+    return withDefaultHeaders(request);
   }
 
   /**
@@ -338,13 +323,13 @@ public abstract class APIOperations {
     MultipartBody request;
     switch (method) {
       case POST:
-        request = Unirest.post(getUrl()).headers(headers).fields(null);
+        request = withDefaultHeaders(Unirest.post(getUrl()).headers(headers)).fields(null);
         break;
       case PUT:
-        request = Unirest.put(getUrl()).headers(headers).fields(null);
+        request = withDefaultHeaders(Unirest.put(getUrl()).headers(headers)).fields(null);
         break;
       case PATCH:
-        request = Unirest.patch(getUrl()).headers(headers).fields(null);
+        request = withDefaultHeaders(Unirest.patch(getUrl()).headers(headers)).fields(null);
         break;
       default:
         throw new UnirestException("Unsupported REST HTTP method: " + method); //NOI18N
@@ -366,6 +351,16 @@ public abstract class APIOperations {
     return request;
   }
 
+  /**
+   * Sets the number of connections that can be open to the host of the url at the same time, e.g. for concurrent
+   * requests.
+   *
+   * @param maxConnections the maximum number of connections to the host
+   */
+  public void setMaxConnections(int maxConnections) {
+    HttpClientPool.setMaxPerRoute(getUrl(), maxConnections);
+  }
+
   /**
    * Sets unirest timeouts.
    *
@@ -373,7 +368,7 @@ public abstract class APIOperations {
    * @param socketTimeout     the socket timeout
    */
   public void setUnirestTimeouts(long connectionTimeout, long socketTimeout) {
-    initClient((int) connectionTimeout, (int) socketTimeout);
+    HttpClientPool.setTimeouts((int) connectionTimeout, (int) socketTimeout);
   }
 
   /**
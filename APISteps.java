@@ -12,7 +12,10 @@ import static org.testng.Assert.assertTrue;
 
 import com.experian.automation.helpers.APIOperations;
 import com.experian.automation.helpers.Config;
+import com.experian.automation.helpers.FixtureCache;
+import com.experian.automation.helpers.HttpClientPool;
 import com.experian.automation.helpers.JSONOperations;
+import com.experian.automation.helpers.LoadGenerator;
 import com.experian.automation.helpers.RESTOperations;
 import com.experian.automation.helpers.RetryExecutor;
 import com.experian.automation.helpers.SOAPOperations;
@@ -28,6 +31,7 @@ import com.jayway.jsonpath.PathNotFoundException;
 import com.mashape.unirest.http.HttpMethod;
 import com.mashape.unirest.http.HttpResponse;
 import com.mashape.unirest.http.exceptions.UnirestException;
+import com.mashape.unirest.request.HttpRequest;
 import io.cucumber.java.en.And;
 
 import java.io.File;
@@ -45,6 +49,7 @@ import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
@@ -81,6 +86,7 @@ public class APISteps {
   private static final String API_PWORD_VAR = "API_PASSWORD"; //NOI18N
   private static final String API_JWT_TOKEN_VAR = "API_JWT_TOKEN"; //NOI18N
   private static final String RESPONSE_VAR = "RESPONSE"; //NOI18N
+  private static final String LOAD_CONCURRENCY_OPTION = "concurrency"; //NOI18N
 
   private static final String UNSUPPORTED_REQUEST_MESSAGE = "Unsupported request type "; //NOI18N
   private static final String UNSUPPORTED_RESPONSE_MESSAGE = "Unsupported response type"; //NOI18N
@@ -240,8 +246,7 @@ public class APISteps {
     filePath = VariablesTransformer.transformSingleValue(filePath);
 
     filePath = FilenameUtils.separatorsToUnix(filePath);
-    File file = new File(filePath);
-    String requestBody = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+    String requestBody = FixtureCache.text(filePath);
     prepareRequestFromText(requestType, requestBody);
   }
 
@@ -351,6 +356,145 @@ public class APISteps {
     }
   }
 
+  /**
+   * Send rest requests from several threads and measure their latency.
+   * <pre>Example:
+   * And I send 1000 concurrent REST POST requests to /v1/applications/TENANT1/CreditEvaluation with concurrency 20 and receive status code HTTP 200</pre>
+   *
+   * @param times              the number of measured requests
+   * @param method             the method
+   * @param uri                the uri
+   * @param concurrency        the number of requests sent at the same time
+   * @param expectedStatusCode the expected status code
+   * @throws Exception the exception
+   */
+  @And("^I send (\\d+) concurrent REST (GET|POST|PUT|PATCH|DELETE) requests to (.*) with concurrency (\\d+) and receive status code HTTP (\\d+)$")
+  public void sendConcurrentRestRequests(Integer times, String method, String uri, Integer concurrency,
+      Integer expectedStatusCode) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    options.put(LOAD_CONCURRENCY_OPTION, concurrency.toString());
+    sendConcurrentRestRequests(times, method, uri, expectedStatusCode, options);
+  }
+
+  /**
+   * Send rest requests from several threads or at a target rate and check their latency and throughput.
+   * <pre>Example:
+   * And I send 1000 concurrent REST POST requests to /v1/applications/TENANT1/CreditEvaluation and receive status code HTTP 200 with load options:
+   *   | concurrency   | 20   |
+   *   | rate          | 100  |
+   *   | warmUp        | 50   |
+   *   | rampUp        | 5000 |
+   *   | maxP95        | 250  |
+   *   | minThroughput | 80   |
+   *   | maxErrors     | 0    |</pre>
+   * The options are the number of workers (1 by default), the target rate in requests per second (none by default),
+   * the number of unmeasured warm-up requests and the ramp-up time in milliseconds. The checks are maxP50, maxP95 and
+   * maxP99 in milliseconds, minThroughput in requests per second and maxErrors (0 by default). The results are saved
+   * in the LOAD_REQUESTS, LOAD_ERRORS, LOAD_THROUGHPUT, LOAD_P50, LOAD_P95, LOAD_P99 and LOAD_MAX variables and
+   * attached to the report.
+   *
+   * @param times              the number of measured requests
+   * @param method             the method
+   * @param uri                the uri
+   * @param expectedStatusCode the expected status code
+   * @param options            the load options and checks
+   * @throws Exception the exception
+   */
+  @And("^I send (\\d+) concurrent REST (GET|POST|PUT|PATCH|DELETE) requests to (.*) and receive status code HTTP (\\d+) with load options:$")
+  public void sendConcurrentRestRequests(Integer times, String method, String uri, Integer expectedStatusCode,
+      Map<String, String> options) throws Exception {
+    uri = VariablesTransformer.transformSingleValue(uri);
+    options = VariablesTransformer.transformMap(options);
+
+    int concurrency = parseInt(options.getOrDefault(LOAD_CONCURRENCY_OPTION, "1"));
+    restOperations.addURL(baseURL + uri);
+    restOperations.setMaxConnections(concurrency);
+
+    String body = Variables.get(API_REQUEST_BODY_VAR);
+    if (body == null) {
+      body = "";
+    }
+    String requestBody = body;
+    String jwtToken = useBasicAuthentication ? null : Variables.get(API_JWT_TOKEN_VAR);
+    String username = Variables.get(API_USERNAME_VAR);
+    String password = Variables.get(API_PWORD_VAR);
+    Map<String, String> parameters = new HashMap<>(queryParameters);
+    // Variables are kept per thread, so the request cookies are read here rather than on the workers
+    String cookies = restOperations.getCookiesForRequest();
+    // The workers send with the timeouts, cookie management and cookies of the scenario
+    HttpClientPool.Settings scenarioSettings = HttpClientPool.getSettings();
+
+    // Requests are built on the worker threads; only the status code is kept
+    LoadGenerator.Request request = () -> {
+      HttpClientPool.useSettings(scenarioSettings);
+      HttpRequest httpRequest = restOperations.createRequest(HttpMethod.valueOf(method), parameters, requestBody);
+      if (jwtToken != null) {
+        restOperations.setJwtAuthentication(httpRequest, jwtToken);
+      } else {
+        restOperations.setAuthentication(httpRequest, username, password);
+      }
+      if (StringUtils.isNotEmpty(cookies)) {
+        httpRequest.header("Cookie", cookies);
+      }
+      return httpRequest.asString().getStatus();
+    };
+
+    LoadGenerator.Result result = new LoadGenerator(times)
+        .concurrency(concurrency)
+        .rate(Double.parseDouble(options.getOrDefault("rate", "0")))
+        .warmUp(parseInt(options.getOrDefault("warmUp", "0")))
+        .rampUp(Long.parseLong(options.getOrDefault("rampUp", "0")))
+        .run(request, expectedStatusCode);
+
+    this.useBasicAuthentication = false;
+    queryParameters.clear();
+    queryFields.clear();
+    Variables.set(API_REQUEST_BODY_VAR, "");
+
+    saveLoadResult(result);
+
+    SoftAssert softAssert = new SoftAssert();
+    long maxErrors = Long.parseLong(options.getOrDefault("maxErrors", "0"));
+    softAssert.assertTrue(result.getErrors() <= maxErrors,
+                          "Failed requests: " + result.getErrors() + ". First error: " + result.getFirstError());
+    for (int percentile : new int[]{50, 95, 99}) {
+      String maxLatency = options.get("maxP" + percentile);
+      if (maxLatency != null) {
+        softAssert.assertTrue(result.percentile(percentile) <= Double.parseDouble(maxLatency),
+                              String.format("p%s latency %s ms is above %s ms", percentile,
+                                            result.percentile(percentile), maxLatency));
+      }
+    }
+    if (options.containsKey("minThroughput")) {
+      softAssert.assertTrue(result.getThroughput() >= Double.parseDouble(options.get("minThroughput")),
+                            String.format("Throughput %.2f req/s is below %s req/s", result.getThroughput(),
+                                          options.get("minThroughput")));
+    }
+    softAssert.assertAll();
+  }
+
+  private void saveLoadResult(LoadGenerator.Result result) throws IOException {
+    Variables.set("LOAD_REQUESTS", String.valueOf(result.getRequests())); //NOI18N
+    Variables.set("LOAD_ERRORS", String.valueOf(result.getErrors())); //NOI18N
+    Variables.set("LOAD_THROUGHPUT", String.format(Locale.ROOT, "%.2f", result.getThroughput())); //NOI18N
+    Variables.set("LOAD_P50", String.format(Locale.ROOT, "%.3f", result.percentile(50))); //NOI18N
+    Variables.set("LOAD_P95", String.format(Locale.ROOT, "%.3f", result.percentile(95))); //NOI18N
+    Variables.set("LOAD_P99", String.format(Locale.ROOT, "%.3f", result.percentile(99))); //NOI18N
+    Variables.set("LOAD_MAX", String.format(Locale.ROOT, "%.3f", result.getHistogram().getMax() / 1000.0)); //NOI18N
+
+    StringBuilder report = new StringBuilder(result.toString()).append(System.lineSeparator());
+    for (String percentile : new String[]{"50", "75", "90", "95", "99", "99.9", "100"}) {
+      report.append(String.format(Locale.ROOT, "p%s: %.3f ms%n", percentile,
+                                  result.percentile(Double.parseDouble(percentile))));
+    }
+    if (result.getFirstError() != null) {
+      report.append("First error: ").append(result.getFirstError()).append(System.lineSeparator());
+    }
+    File reportFile = new File(String.format("%s/load-%s.txt", Config.getAsUnixPath("reports.dir"), UUID.randomUUID()));
+    FileUtils.writeStringToFile(reportFile, report.toString(), StandardCharsets.UTF_8);
+    logger.embedFileToReport(reportFile, "text/plain");
+  }
+
   /**
    * Send rest request with method.
    * <pre>Example:
@@ -928,8 +1072,12 @@ public class APISteps {
 
     schemaFilePath = FilenameUtils.separatorsToUnix(
         schemaFilePath);
-    File schemaFile = new File(schemaFilePath);
-    verifyResponseWithSchema(responseType, FileUtils.readFileToString(schemaFile, StandardCharsets.UTF_8));
+    if (JSON.equals(responseType)) {
+      // The schema is compiled once per file and reused by the following scenarios
+      assertTrue(new JSONOperations().validateJSON(Variables.get(RESPONSE_VAR), FixtureCache.jsonSchema(schemaFilePath)));
+    } else {
+      verifyResponseWithSchema(responseType, FixtureCache.text(schemaFilePath));
+    }
   }
 
   /**
@@ -1447,17 +1595,19 @@ public class APISteps {
    * @param paths        Map that contains the path and the name of the variable
    */
   private void saveResponseInVariables(String response, String responseType, Map<String, String> paths) {
-    for (Map.Entry<String, String> path : paths.entrySet()) {
-      switch (responseType) {
-        case JSON:
-          Variables.set(path.getValue(), new JSONOperations().evaluateJSONPath(response, path.getKey()));
-          break;
-        case XML:
+    switch (responseType) {
+      case JSON:
+        // The response is parsed once for all the paths
+        Map<String, String> values = new JSONOperations().evaluateJSONPaths(response, paths.keySet());
+        paths.forEach((jsonPath, variable) -> Variables.set(variable, values.get(jsonPath)));
+        break;
+      case XML:
+        for (Map.Entry<String, String> path : paths.entrySet()) {
           Variables.set(path.getValue(), new XMLOperations().evaluateXPath(response, path.getKey()));
-          break;
-        default:
-          throw new IllegalArgumentException(UNSUPPORTED_RESPONSE_MESSAGE);
-      }
+        }
+        break;
+      default:
+        throw new IllegalArgumentException(UNSUPPORTED_RESPONSE_MESSAGE);
     }
   }
 
@@ -0,0 +1,48 @@
+package com.experian.automation.steps;
+
+import com.experian.automation.helpers.APIOperations;
+import com.experian.automation.helpers.Variables;
+import com.sun.net.httpserver.HttpServer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class APIStepsTest {
+
+  @Test
+  void concurrentRequestsSendScenarioCookies() throws Exception {
+    List<String> cookies = new CopyOnWriteArrayList<>();
+    HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/ping", exchange -> {
+      cookies.add(String.valueOf(exchange.getRequestHeaders().getFirst("Cookie")));
+      exchange.sendResponseHeaders(200, -1);
+      exchange.close();
+    });
+    server.start();
+
+    try {
+      Variables.set(APIOperations.REQUEST_COOKIE + ".session", "abc");
+
+      APISteps steps = new APISteps();
+      steps.setBaseURL("http://localhost:" + server.getAddress().getPort());
+      Map<String, String> options = new HashMap<>();
+      options.put("concurrency", "2");
+      options.put("maxErrors", "0");
+      steps.sendConcurrentRestRequests(4, "GET", "/ping", 200, options);
+
+      Assert.assertEquals(Variables.get("LOAD_ERRORS"), "0");
+      Assert.assertEquals(cookies.size(), 4);
+      for (String cookie : cookies) {
+        Assert.assertEquals(cookie, "session=abc; ");
+      }
+    } finally {
+      Variables.getAll().remove(APIOperations.REQUEST_COOKIE + ".session");
+      server.stop(0);
+    }
+  }
+}
@@ -9,22 +9,35 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 import org.apache.commons.compress.archivers.ArchiveException;
-import org.apache.commons.compress.archivers.ArchiveOutputStream;
-import org.apache.commons.compress.archivers.ArchiveStreamFactory;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.parallel.FileBasedScatterGatherBackingStore;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
-import org.testng.reporters.Files;
 
 /**
  * The type Archivers operations.
@@ -33,10 +46,12 @@ public class ArchiversOperations {
 
   private final static Logger logger = Logger.getLogger(ArchiversOperations.class);
 
+  private static final int BUFFER_SIZE = 256 * 1024;
+
   /**
-   * Extract a given TAR archive to some destination folder.
+   * Extract a given TAR archive, optionally gzip compressed, to some destination folder.
    *
-   * @param src The full path to the archive (e.g C:/Temp/file.tar)
+   * @param src The full path to the archive (e.g C:/Temp/file.tar or C:/Temp/file.tar.gz)
    * @param dst The path to the destination folder (e.g C:/Temp/Archives )
    * @return List of extracted files
    * @throws IOException      the io exception
@@ -47,7 +62,7 @@ public class ArchiversOperations {
     List<String> extractedList = new ArrayList<String>();
     logger.info(String.format("Extracting file: %s to: %s", src, dst));
 
-    try (TarArchiveInputStream inStream = new TarArchiveInputStream(new FileInputStream(new File(src)), StandardCharsets.UTF_8.name())) {
+    try (TarArchiveInputStream inStream = new TarArchiveInputStream(openTarStream(src), StandardCharsets.UTF_8.name())) {
 
       TarArchiveEntry tarFile;
       while ((tarFile = (TarArchiveEntry) inStream.getNextEntry()) != null) {
@@ -63,7 +78,7 @@ public class ArchiversOperations {
           if (tarFile.isDirectory()) {
             dstFile.mkdirs();
           } else {
-            Files.copyFile(inStream, dstFile);
+            writeEntry(inStream, dstFile);
           }
           extractedList.add(dstFile.getAbsolutePath());
 
@@ -77,61 +92,69 @@ public class ArchiversOperations {
     return extractedList;
   }
 
+  private static InputStream openTarStream(String src) throws IOException {
+    InputStream input = new BufferedInputStream(new FileInputStream(src), BUFFER_SIZE);
+
+    byte[] signature = new byte[2];
+    input.mark(signature.length);
+    int read = IOUtils.read(input, signature);
+    input.reset();
+
+    return GzipCompressorInputStream.matches(signature, read) ? new GzipCompressorInputStream(input, true) : input;
+  }
+
 
   /**
-   * The method unzip a given archive (e.g .zip,.rar,.wra) in some destination folder.
+   * The method unzip a given archive (e.g .zip,.rar,.wra) in some destination folder. Entries are read through the
+   * central directory and extracted in parallel.
    *
    * @param src The full path to the archive (e.g C:/Temp/file.zip)
    * @param dst The path to the destination folder (e.g C:/Temp/Archives )
    * @throws IOException the io exception
    */
   public void unzip(String src, String dst) throws IOException {
-    byte[] buffer = new byte[1024];
+    File folder = new File(dst);
+    String canonicalDestinationFolder = folder.getCanonicalPath();
+    folder.mkdirs();
 
-    try (ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(src), StandardCharsets.UTF_8)) {
-      File folder = new File(dst);
-      if (!folder.exists()) {
-        folder.mkdir();
-      }
+    logger.info(String.format("Starting unzipping file: %s", src));
 
-      ZipEntry zipEntry = zipInputStream.getNextEntry();
-      logger.info(String.format("Starting unzipping file: %s", src));
-      while (zipEntry != null) {
-        String fileName = zipEntry.getName();
-        File newFile = new File(dst + File.separator + fileName);
-        String canonicalDestinationPath = newFile.getCanonicalPath();
+    try (ZipFile zipFile = new ZipFile(src, StandardCharsets.UTF_8)) {
+      List<ZipEntry> fileEntries = new ArrayList<>();
 
-        File dstCanonical = new File(dst);
-        String canonicalDestinationFolder = dstCanonical.getCanonicalPath();
+      for (ZipEntry zipEntry : Collections.list(zipFile.entries())) {
+        File newFile = new File(dst + File.separator + zipEntry.getName());
 
-        if(canonicalDestinationPath.startsWith(canonicalDestinationFolder)){
-          new File(newFile.getParent()).mkdirs();
-          if (!zipEntry.isDirectory()) {
-            try (FileOutputStream fos = new FileOutputStream(newFile)) {
-              int len;
-              while ((len = zipInputStream.read(buffer)) > 0) {
-                fos.write(buffer, 0, len);
-              }
-            }
-          }
-          zipEntry = zipInputStream.getNextEntry();
-        } else {
+        if (!newFile.getCanonicalPath().startsWith(canonicalDestinationFolder)) {
           throw new IOException("Entry is outside of the target directory");
         }
-      }
 
-      zipInputStream.closeEntry();
-      zipInputStream.close();
+        if (zipEntry.isDirectory()) {
+          newFile.mkdirs();
+        } else {
+          newFile.getParentFile().mkdirs();
+          fileEntries.add(zipEntry);
+        }
+      }
 
-      logger.info(String.format("Finished unzipping file: %s", src));
+      try {
+        fileEntries.parallelStream().forEach(zipEntry -> {
+          try (InputStream input = zipFile.getInputStream(zipEntry)) {
+            writeEntry(input, new File(dst + File.separator + zipEntry.getName()));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
 
-    } catch (IOException ex) {
-      ex.printStackTrace();
+      logger.info(String.format("Finished unzipping file: %s with %s files", src, fileEntries.size()));
     }
   }
 
   /**
-   * The method zip a given directory to zip file.
+   * The method zip a given directory to zip file. Entries are deflated in parallel and merged into the archive.
    *
    * @param src The full path to the archive (e.g C:/Temp)
    * @param dst The path to the destination folder (e.g C:/Temp.zip )
@@ -139,24 +162,255 @@ public class ArchiversOperations {
    * @throws ArchiveException the archive exception
    */
   public static void zip(String src, String dst) throws IOException, ArchiveException {
-    try (OutputStream archiveStream = new FileOutputStream(
-        dst); ArchiveOutputStream archive = new ArchiveStreamFactory().createArchiveOutputStream(
-        ArchiveStreamFactory.ZIP, archiveStream, StandardCharsets.UTF_8.name())) {
+    Collection<File> fileList = FileUtils.listFiles(new File(src), null, true);
+    // The pool and the per thread scatter files are owned here so they are released even if zipping fails early
+    ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    File scatterDir = Files.createTempDirectory("parallelscatter").toFile();
+    AtomicInteger scatterFiles = new AtomicInteger();
 
-      Collection<File> fileList = FileUtils.listFiles(new File(src), null, true);
+    try (ZipArchiveOutputStream archive = new ZipArchiveOutputStream(new File(dst))) {
+      archive.setEncoding(StandardCharsets.UTF_8.name());
+      ParallelScatterZipCreator creator = new ParallelScatterZipCreator(executor,
+          () -> new FileBasedScatterGatherBackingStore(new File(scatterDir, "n" + scatterFiles.incrementAndGet())));
 
       for (File file : fileList) {
         String entryName = file.getCanonicalPath().substring(new File(src).getAbsolutePath().length() + 1);
         ZipArchiveEntry entry = new ZipArchiveEntry(entryName);
-        archive.putArchiveEntry(entry);
+        entry.setMethod(ZipEntry.DEFLATED);
+        entry.setTime(file.lastModified());
+
+        creator.addArchiveEntry(entry, () -> {
+          try {
+            return new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      }
+
+      creator.writeTo(archive);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Zipping of " + src + " was interrupted", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+      throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    } finally {
+      executor.shutdownNow();
+      FileUtils.deleteQuietly(scatterDir);
+    }
+
+    logger.info(String.format("Zipped %s files from %s to %s", fileList.size(), src, dst));
+  }
+
+  /**
+   * Lists the entries of a ZIP or (optionally gzip compressed) TAR archive without extracting it. ZIP entries are read
+   * from the central directory; TAR entries are streamed and their CRC computed on the fly.
+   *
+   * @param src The full path to the archive (e.g C:/Temp/file.zip)
+   * @return the archive entries by name, in archive order
+   * @throws IOException the io exception
+   */
+  public static Map<String, ArchiveEntryInfo> listEntries(String src) throws IOException {
+    Map<String, ArchiveEntryInfo> entries = new LinkedHashMap<>();
 
-        try (BufferedInputStream input = new BufferedInputStream(new FileInputStream(file))) {
-          IOUtils.copy(input, archive);
+    if (isZip(src)) {
+      try (ZipFile zipFile = new ZipFile(src, StandardCharsets.UTF_8)) {
+        for (ZipEntry zipEntry : Collections.list(zipFile.entries())) {
+          entries.put(zipEntry.getName(), new ArchiveEntryInfo(zipEntry.getName(), zipEntry.isDirectory(),
+                                                               zipEntry.getSize(), zipEntry.getCrc()));
+        }
+      }
+    } else {
+      try (TarArchiveInputStream inStream = new TarArchiveInputStream(openTarStream(src),
+                                                                      StandardCharsets.UTF_8.name())) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        TarArchiveEntry tarEntry;
+        while ((tarEntry = inStream.getNextTarEntry()) != null) {
+          CRC32 crc = new CRC32();
+          int read;
+          while ((read = inStream.read(buffer)) != -1) {
+            crc.update(buffer, 0, read);
+          }
+          entries.put(tarEntry.getName(), new ArchiveEntryInfo(tarEntry.getName(), tarEntry.isDirectory(),
+                                                               tarEntry.getSize(), crc.getValue()));
         }
-        archive.closeArchiveEntry();
       }
     }
+
+    return entries;
   }
-}
 
+  /**
+   * Compares two archives entry by entry using names, sizes and CRCs, without extracting them.
+   *
+   * @param expected The full path to the expected archive (e.g C:/Temp/golden.zip)
+   * @param actual   The full path to the actual archive (e.g C:/Temp/output.zip)
+   * @return the differences found, empty if the archives have the same content
+   * @throws IOException the io exception
+   */
+  public static List<String> compareArchives(String expected, String actual) throws IOException {
+    Map<String, ArchiveEntryInfo> expectedEntries = listEntries(expected);
+    Map<String, ArchiveEntryInfo> actualEntries = listEntries(actual);
+    List<String> differences = new ArrayList<>();
+
+    for (ArchiveEntryInfo expectedEntry : expectedEntries.values()) {
+      ArchiveEntryInfo actualEntry = actualEntries.get(expectedEntry.getName());
+
+      if (actualEntry == null) {
+        differences.add(String.format("Entry %s is missing", expectedEntry.getName()));
+      } else if (expectedEntry.getSize() != actualEntry.getSize()) {
+        differences.add(String.format("Entry %s has size %s instead of %s", expectedEntry.getName(),
+                                      actualEntry.getSize(), expectedEntry.getSize()));
+      } else if (expectedEntry.getCrc() != actualEntry.getCrc()) {
+        differences.add(String.format("Entry %s has different content", expectedEntry.getName()));
+      }
+    }
+
+    for (String name : actualEntries.keySet()) {
+      if (!expectedEntries.containsKey(name)) {
+        differences.add(String.format("Entry %s is not expected", name));
+      }
+    }
+
+    return differences;
+  }
+
+  /**
+   * Reads a single archive entry into memory.
+   *
+   * @param src   The full path to the archive (e.g C:/Temp/file.zip)
+   * @param entry the entry name (e.g folder/file.xml)
+   * @return the entry content
+   * @throws IOException the io exception, also thrown if the entry does not exist
+   */
+  public static byte[] readEntry(String src, String entry) throws IOException {
+    if (isZip(src)) {
+      try (ZipFile zipFile = new ZipFile(src, StandardCharsets.UTF_8)) {
+        ZipEntry zipEntry = zipFile.getEntry(entry);
+        if (zipEntry == null) {
+          throw new IOException(String.format("Entry %s not found in %s", entry, src));
+        }
+        try (InputStream input = zipFile.getInputStream(zipEntry)) {
+          return IOUtils.toByteArray(input);
+        }
+      }
+    }
+
+    try (TarArchiveInputStream inStream = new TarArchiveInputStream(openTarStream(src),
+                                                                    StandardCharsets.UTF_8.name())) {
+      TarArchiveEntry tarEntry;
+      while ((tarEntry = inStream.getNextTarEntry()) != null) {
+        if (tarEntry.getName().equals(entry)) {
+          return IOUtils.toByteArray(inStream);
+        }
+      }
+    }
+    throw new IOException(String.format("Entry %s not found in %s", entry, src));
+  }
+
+  /**
+   * Extracts only the given entries of an archive to some destination folder, keeping their relative paths.
+   *
+   * @param src     The full path to the archive (e.g C:/Temp/file.zip)
+   * @param entries the entry names to extract
+   * @param dst     The path to the destination folder (e.g C:/Temp/Archives )
+   * @return List of extracted files
+   * @throws IOException the io exception, also thrown if some entry does not exist
+   */
+  public static List<String> extractEntries(String src, Collection<String> entries, String dst) throws IOException {
+    List<String> extractedList = new ArrayList<>();
+    String canonicalDestinationFolder = new File(dst).getCanonicalPath();
+    Map<String, File> targets = new LinkedHashMap<>();
+
+    for (String entry : entries) {
+      File dstFile = new File(dst, entry);
+      if (!dstFile.getCanonicalPath().startsWith(canonicalDestinationFolder)) {
+        throw new IOException("Entry is outside of the target directory");
+      }
+      targets.put(entry, dstFile);
+    }
+
+    if (isZip(src)) {
+      try (ZipFile zipFile = new ZipFile(src, StandardCharsets.UTF_8)) {
+        for (Map.Entry<String, File> target : targets.entrySet()) {
+          ZipEntry zipEntry = zipFile.getEntry(target.getKey());
+          if (zipEntry != null) {
+            try (InputStream input = zipFile.getInputStream(zipEntry)) {
+              extractedList.add(writeEntry(input, target.getValue()));
+            }
+          }
+        }
+      }
+    } else {
+      try (TarArchiveInputStream inStream = new TarArchiveInputStream(openTarStream(src),
+                                                                      StandardCharsets.UTF_8.name())) {
+        TarArchiveEntry tarEntry;
+        while (extractedList.size() < targets.size() && (tarEntry = inStream.getNextTarEntry()) != null) {
+          File dstFile = targets.get(tarEntry.getName());
+          if (dstFile != null && !tarEntry.isDirectory()) {
+            extractedList.add(writeEntry(inStream, dstFile));
+          }
+        }
+      }
+    }
+
+    if (extractedList.size() < targets.size()) {
+      throw new IOException(String.format("Only %s of the entries %s were found in %s", extractedList.size(),
+                                          targets.keySet(), src));
+    }
+
+    logger.info(String.format("Extracted %s entries from %s to %s", extractedList.size(), src, dst));
+    return extractedList;
+  }
+
+  private static String writeEntry(InputStream input, File dstFile) throws IOException {
+    dstFile.getParentFile().mkdirs();
+    try (OutputStream output = new FileOutputStream(dstFile)) {
+      IOUtils.copyLarge(input, output, new byte[BUFFER_SIZE]);
+    }
+    return dstFile.getAbsolutePath();
+  }
+
+  private static boolean isZip(String src) throws IOException {
+    byte[] signature = new byte[4];
+    try (InputStream input = new FileInputStream(src)) {
+      return IOUtils.read(input, signature) == signature.length
+          && ZipArchiveInputStream.matches(signature, signature.length);
+    }
+  }
+
+  /**
+   * Name, size and CRC of an archive entry.
+   */
+  public static class ArchiveEntryInfo {
+
+    private final String name;
+    private final boolean directory;
+    private final long size;
+    private final long crc;
+
+    private ArchiveEntryInfo(String name, boolean directory, long size, long crc) {
+      this.name = name;
+      this.directory = directory;
+      this.size = size;
+      this.crc = crc;
+    }
 
+    public String getName() {
+      return name;
+    }
+
+    public boolean isDirectory() {
+      return directory;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public long getCrc() {
+      return crc;
+    }
+  }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) Experian, 2020. All rights reserved.
+ */
+package com.experian.automation.helpers;
+
+import com.opencsv.CSVParser;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Random access to the rows of a CSV file.
+ * <p>
+ * The byte offset of every record is indexed once and the index is cached per file path for as long as the file size
+ * and modification time stay the same, so reading row N of a large CSV does not require parsing the rows before it.
+ * Records follow the default opencsv format (comma separator, double quote, backslash escape) and may span several
+ * lines when quoted. Rows are numbered from 0, the header being row 0.
+ * <p>
+ * Example: CSVFileIndex.of("C:/Temp/data.csv").readRow(3)
+ */
+public class CSVFileIndex {
+
+  private static final int MAX_CACHED_FILES = 32;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final Map<Path, CSVFileIndex> cache = LRUCache.synchronizedOf(MAX_CACHED_FILES);
+
+  private final Path path;
+  private final long size;
+  private final long lastModified;
+
+  // Start offset of every row followed by the file size
+  private final long[] offsets;
+
+  // Row numbers by cell value, built lazily per column
+  private final Map<Integer, Map<String, List<Integer>>> columnIndexes = new ConcurrentHashMap<>();
+
+  private CSVFileIndex(Path path, long size, long lastModified, long[] offsets) {
+    this.path = path;
+    this.size = size;
+    this.lastModified = lastModified;
+    this.offsets = offsets;
+  }
+
+  /**
+   * Returns the index of a CSV file, building it if the file was not indexed yet or changed since.
+   *
+   * @param file The full path to the CSV file (e.g C:/Temp/data.csv)
+   * @return the CSV file index
+   * @throws IOException the io exception
+   */
+  public static CSVFileIndex of(String file) throws IOException {
+    Path path = Paths.get(file).toAbsolutePath().normalize();
+    long size = Files.size(path);
+    long lastModified = Files.getLastModifiedTime(path).toMillis();
+
+    CSVFileIndex index = cache.get(path);
+    if (index == null || index.size != size || index.lastModified != lastModified) {
+      index = new CSVFileIndex(path, size, lastModified, indexRows(path));
+      cache.put(path, index);
+    }
+
+    return index;
+  }
+
+  private static long[] indexRows(Path path) throws IOException {
+    long[] offsets = new long[1024];
+    int rows = 0;
+    boolean inQuotes = false;
+    boolean escaped = false;
+    boolean rowStarted = false;
+    long position = 0;
+
+    try (InputStream input = Files.newInputStream(path)) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+
+      while ((read = input.read(buffer)) != -1) {
+        for (int i = 0; i < read; i++, position++) {
+          byte current = buffer[i];
+
+          if (!rowStarted) {
+            if (rows + 1 >= offsets.length) {
+              offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[rows++] = position;
+            rowStarted = true;
+          }
+
+          if (escaped) {
+            escaped = false;
+            if (current == CSVParser.DEFAULT_QUOTE_CHARACTER || current == CSVParser.DEFAULT_ESCAPE_CHARACTER) {
+              continue;
+            }
+          }
+
+          if (current == CSVParser.DEFAULT_ESCAPE_CHARACTER) {
+            escaped = true;
+          } else if (current == CSVParser.DEFAULT_QUOTE_CHARACTER) {
+            inQuotes = !inQuotes;
+          } else if (current == '\n' && !inQuotes) {
+            rowStarted = false;
+          }
+        }
+      }
+    }
+
+    offsets[rows] = position;
+    return Arrays.copyOf(offsets, rows + 1);
+  }
+
+  /**
+   * Gets the number of rows, header included.
+   *
+   * @return the row count
+   */
+  public int rowCount() {
+    return offsets.length - 1;
+  }
+
+  /**
+   * Reads a single row.
+   *
+   * @param row the row number (starting 0)
+   * @return the row values
+   * @throws IOException the io exception
+   */
+  public String[] readRow(int row) throws IOException {
+    return readRows(row, row + 1).get(0);
+  }
+
+  /**
+   * Reads a contiguous range of rows.
+   *
+   * @param fromRow the first row to read (starting 0)
+   * @param toRow   the row to stop before
+   * @return the values of each row
+   * @throws IOException the io exception
+   */
+  public List<String[]> readRows(int fromRow, int toRow) throws IOException {
+    if (fromRow < 0 || toRow < fromRow || toRow > rowCount()) {
+      throw new IndexOutOfBoundsException(
+          "Rows " + fromRow + "-" + toRow + " are outside of " + path + " with " + rowCount() + " rows");
+    }
+
+    List<String[]> rows = new ArrayList<>(toRow - fromRow);
+    if (fromRow == toRow) {
+      return rows;
+    }
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      channel.position(offsets[fromRow]);
+      InputStream input = Channels.newInputStream(channel);
+
+      try (CSVReader reader = new CSVReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+        for (int row = fromRow; row < toRow; row++) {
+          rows.add(reader.readNext());
+        }
+      }
+    }
+
+    return rows;
+  }
+
+  /**
+   * Reads a row as a map of header values to row values.
+   *
+   * @param row     the row number (starting 0, the header being row 0)
+   * @param columns the header names to keep; all columns are kept if none are given
+   * @return header-value map in column order
+   * @throws IOException the io exception
+   */
+  public Map<String, String> readRowAsMap(int row, String... columns) throws IOException {
+    String[] header = readRow(0);
+    String[] values = readRow(row);
+    List<String> projection = Arrays.asList(columns);
+    Map<String, String> headerValueMap = new LinkedHashMap<>();
+
+    for (int i = 0; i < header.length; i++) {
+      if (projection.isEmpty() || projection.contains(header[i])) {
+        headerValueMap.put(header[i], i < values.length ? values[i] : null);
+      }
+    }
+
+    return headerValueMap;
+  }
+
+  /**
+   * Finds the rows having a given value in some column. The column is indexed on first use and the index is kept with
+   * the file index.
+   *
+   * @param column the column number (starting 0)
+   * @param value  the cell value to look for
+   * @return the matching rows, in file order
+   * @throws IOException the io exception
+   */
+  public List<String[]> rowsWhere(int column, String value) throws IOException {
+    Map<String, List<Integer>> columnIndex = columnIndexes.get(column);
+    if (columnIndex == null) {
+      columnIndex = indexColumn(column);
+      columnIndexes.put(column, columnIndex);
+    }
+
+    List<String[]> rows = new ArrayList<>();
+    for (int row : columnIndex.getOrDefault(value, Collections.emptyList())) {
+      rows.add(readRow(row));
+    }
+
+    return rows;
+  }
+
+  private Map<String, List<Integer>> indexColumn(int column) throws IOException {
+    Map<String, List<Integer>> columnIndex = new HashMap<>();
+    int row = 0;
+
+    for (String[] values : readRows(0, rowCount())) {
+      if (column < values.length) {
+        columnIndex.computeIfAbsent(values[column], key -> new ArrayList<>()).add(row);
+      }
+      row++;
+    }
+
+    return columnIndex;
+  }
+
+  /**
+   * Updates several cells with a single rewrite of the file. Rows which are not edited are copied byte for byte;
+   * edited rows are written unquoted, keeping their original line ending. The file is replaced atomically.
+   *
+   * @param cells the new cell values, rows and columns starting 0
+   * @throws IOException the io exception
+   */
+  public void updateCells(List<CSVCellInput> cells) throws IOException {
+    if (cells.isEmpty()) {
+      return;
+    }
+
+    Map<Integer, List<CSVCellInput>> journal = new TreeMap<>();
+    for (CSVCellInput cell : cells) {
+      checkRow(cell.getRow());
+      journal.computeIfAbsent(cell.getRow(), row -> new ArrayList<>()).add(cell);
+    }
+
+    Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ);
+          FileChannel target = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+
+        long copied = 0;
+        for (Map.Entry<Integer, List<CSVCellInput>> entry : journal.entrySet()) {
+          int row = entry.getKey();
+          copyRange(source, target, copied, offsets[row]);
+
+          String[] values = readRow(row);
+          for (CSVCellInput cell : entry.getValue()) {
+            if (cell.getCol() >= values.length) {
+              throw new IndexOutOfBoundsException(
+                  "Column " + cell.getCol() + " is outside of row " + row + " with " + values.length + " columns");
+            }
+            values[cell.getCol()] = cell.getValue();
+          }
+
+          target.write(ByteBuffer.wrap(toLine(values, lineEnding(source, row)).getBytes(StandardCharsets.UTF_8)));
+          copied = offsets[row + 1];
+        }
+        copyRange(source, target, copied, size);
+      }
+
+      FSOperations.moveAtomically(temp, path);
+    } finally {
+      Files.deleteIfExists(temp);
+      cache.remove(path);
+    }
+  }
+
+  private String lineEnding(FileChannel channel, int row) throws IOException {
+    long end = offsets[row + 1];
+    int length = (int) Math.min(2, end - offsets[row]);
+    ByteBuffer ending = ByteBuffer.allocate(length);
+    channel.read(ending, end - length);
+
+    String tail = new String(ending.array(), StandardCharsets.UTF_8);
+    if (tail.endsWith("\r\n")) {
+      return "\r\n";
+    }
+    return tail.endsWith("\n") ? "\n" : "";
+  }
+
+  private static String toLine(String[] values, String lineEnding) throws IOException {
+    StringWriter line = new StringWriter();
+    try (CSVWriter writer = new CSVWriter(line, CSVWriter.DEFAULT_SEPARATOR, CSVWriter.NO_QUOTE_CHARACTER,
+                                          CSVWriter.NO_ESCAPE_CHARACTER, lineEnding)) {
+      writer.writeNext(values);
+    }
+    return line.toString();
+  }
+
+  private static void copyRange(FileChannel source, FileChannel target, long from, long to) throws IOException {
+    long position = from;
+    while (position < to) {
+      position += source.transferTo(position, to - position, target);
+    }
+  }
+
+  private void checkRow(int row) {
+    if (row < 0 || row >= rowCount()) {
+      throw new IndexOutOfBoundsException("Row " + row + " is outside of " + path + " with " + rowCount() + " rows");
+    }
+  }
+}
@@ -3,6 +3,7 @@
  */
 package com.experian.automation.helpers.powercurve;
 
+import com.experian.automation.helpers.CSVFileIndex;
 import com.experian.automation.helpers.Config;
 import com.experian.automation.helpers.powercurve.parameters.dynamic.Data;
 import com.experian.automation.helpers.powercurve.parameters.dynamic.Description;
@@ -13,11 +14,7 @@ import com.google.gson.Gson;
 import com.mashape.unirest.http.HttpResponse;
 import com.mashape.unirest.http.Unirest;
 import com.mashape.unirest.http.exceptions.UnirestException;
-import com.opencsv.CSVReader;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
@@ -136,30 +133,28 @@ public class DynamicParamsOperations {
   private List<LinkedList<Parameter>> fromCSV(String file) throws IOException {
     List<LinkedList<Parameter>> list = new ArrayList<>();
 
-    try (CSVReader csvReader = new CSVReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
-      String[] values;
-      while ((values = csvReader.readNext()) != null) {
-        LinkedList<Parameter> params = new LinkedList<>();
-        List<String> tokens = Arrays.asList(values);
+    CSVFileIndex csvIndex = CSVFileIndex.of(file);
+    for (String[] values : csvIndex.readRows(0, csvIndex.rowCount())) {
+      LinkedList<Parameter> params = new LinkedList<>();
+      List<String> tokens = Arrays.asList(values);
 
-        Assert.assertEquals("Expecting even size - Key value pair", 0, tokens.size() % 2);
+      Assert.assertEquals("Expecting even size - Key value pair", 0, tokens.size() % 2);
 
-        for (int i = 0; i < tokens.size(); i += 2) {
-          String value = tokens.get(i);
-          String description = tokens.get(i + 1);
+      for (int i = 0; i < tokens.size(); i += 2) {
+        String value = tokens.get(i);
+        String description = tokens.get(i + 1);
 
-          if (StringUtils.isEmpty(value) || StringUtils.isEmpty(description)) {
-            continue;
-          }
-
-          Parameter p = new Parameter();
-          p.setValue(value);
-          p.setDescription(new Description(description));
-          params.add(p);
+        if (StringUtils.isEmpty(value) || StringUtils.isEmpty(description)) {
+          continue;
         }
 
-        list.add(params);
+        Parameter p = new Parameter();
+        p.setValue(value);
+        p.setDescription(new Description(description));
+        params.add(p);
       }
+
+      list.add(params);
     }
 
     return list;
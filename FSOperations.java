@@ -15,6 +15,12 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
@@ -561,6 +567,47 @@ public class FSOperations {
     return dir.listFiles(fileFilter);
   }
 
+  /**
+   * Moves a fully written temporary file over its target so readers never observe a partially written file.
+   * Falls back to a plain replacing move on file systems without atomic rename support. When the target exists, its
+   * permissions and owner are first copied to the temporary file, which is created owner-only by
+   * {@link Files#createTempFile}, so the replaced file keeps them.
+   *
+   * @param source the temporary file, expected to be located in the same directory as the target
+   * @param target the file to be replaced
+   * @throws IOException the io exception
+   */
+  public static void moveAtomically(Path source, Path target) throws IOException {
+    copyPosixAttributes(target, source);
+    try {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static void copyPosixAttributes(Path from, Path to) throws IOException {
+    PosixFileAttributeView fromView = Files.getFileAttributeView(from, PosixFileAttributeView.class);
+    PosixFileAttributeView toView = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+    if (fromView == null || toView == null || !Files.exists(from)) {
+      return;
+    }
+
+    PosixFileAttributes attributes = fromView.readAttributes();
+    // Changing the owner or group needs privileges the test user usually lacks, the file then keeps the current ones
+    try {
+      toView.setOwner(attributes.owner());
+    } catch (IOException e) {
+      // Keep the current owner
+    }
+    try {
+      toView.setGroup(attributes.group());
+    } catch (IOException e) {
+      // Keep the current group
+    }
+    toView.setPermissions(attributes.permissions());
+  }
+
   /**
    * Compare files With OR Without EOL
    *
@@ -570,6 +617,22 @@ public class FSOperations {
    * @throws Exception the exception
    */
   public static void compareFiles(String actual, String expected, Boolean ignoreEOL) throws Exception {
+    compareFiles(actual, expected, ignoreEOL,
+                 BooleanUtils.isTrue(ignoreEOL) ? Charset.defaultCharset() : StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Compare files With OR Without EOL. The files are compared in chunks and only the first difference is reported,
+   * with its position and a few characters around it.
+   *
+   * @param actual - Output file
+   * @param expected - Golden file
+   * @boolean ignoreEOL - Exclude EndOfLine in file comparison
+   * @param charset - Charset used to decode the files
+   * @throws Exception the exception
+   */
+  public static void compareFiles(String actual, String expected, Boolean ignoreEOL, Charset charset)
+      throws Exception {
 
     actual = VariablesTransformer.transformSingleValue(actual);
     expected = VariablesTransformer.transformSingleValue(expected);
@@ -577,18 +640,15 @@ public class FSOperations {
     actual = FilenameUtils.separatorsToUnix(actual);
     expected = FilenameUtils.separatorsToUnix(expected);
 
-    File actualFile = new File(actual);
-    File expectedFile = new File(expected);
+    // Identical digests need no further comparison; the digest of a golden file is computed once per process
+    if (FixtureCache.sameContent(expected, actual)) {
+      return;
+    }
 
-    String actualContent = FileUtils.readFileToString(new File(actual), StandardCharsets.UTF_8);
-    String expectedContent = FileUtils.readFileToString(new File(expected), StandardCharsets.UTF_8);
+    String difference = new FileComparator(actual, expected).ignoreEOL(BooleanUtils.isTrue(ignoreEOL))
+        .charset(charset).compare();
 
-    if (BooleanUtils.isTrue(ignoreEOL)) {
-      assertTrue(FileUtils.contentEqualsIgnoreEOL(actualFile, expectedFile, String.valueOf(Charset.defaultCharset())),
-                 "The files are not identical between file " + actualFile + " and file " + expectedFile);
-    } else {
-      assertEquals(actualContent, expectedContent, "Files have different content.");
-    }
+    assertTrue(difference == null, "Files " + actual + " and " + expected + " have different content. " + difference);
   }
 
   /**
@@ -603,19 +663,33 @@ public class FSOperations {
   public static void compareXMLContent(String expectedXML, String actualXML, Boolean isFileInput)
       throws IOException, SAXException {
 
+    expectedXML = VariablesTransformer.transformSingleValue(expectedXML);
+    actualXML = VariablesTransformer.transformSingleValue(actualXML);
+
+    if (BooleanUtils.isTrue(isFileInput) && FixtureCache.sameContent(expectedXML, actualXML)) {
+      return;
+    }
+
+    // Comments and whitespace are ignored, text is normalized and attribute order does not matter
+    XMLStreamComparator comparator = new XMLStreamComparator();
+    List<String> differences = BooleanUtils.isTrue(isFileInput) ? comparator.compare(expectedXML, actualXML)
+        : comparator.compareContent(expectedXML, actualXML);
+    if (differences.isEmpty()) {
+      return;
+    }
+
+    // The streamed comparison is strict about element order; XMLUnit decides whether the documents are still similar,
+    // e.g. with reordered siblings
     XMLUnit.setIgnoreComments(true);
     XMLUnit.setIgnoreWhitespace(true);
     XMLUnit.setIgnoreAttributeOrder(true);
     XMLUnit.setNormalizeWhitespace(true);
     XMLUnit.setNormalize(true);
 
-    expectedXML = VariablesTransformer.transformSingleValue(expectedXML);
-    actualXML = VariablesTransformer.transformSingleValue(actualXML);
-
     String expectedXMLContent;
     String actualXMLContent;
 
-    if (isFileInput){
+    if (BooleanUtils.isTrue(isFileInput)) {
       expectedXMLContent = FileUtils.readFileToString(new File(expectedXML), StandardCharsets.UTF_8); // NOI18N
       actualXMLContent = FileUtils.readFileToString(new File(actualXML), StandardCharsets.UTF_8); // NOI18N
     } else {
@@ -625,7 +699,7 @@ public class FSOperations {
 
     DetailedDiff diff = new DetailedDiff(XMLUnit.compareXML(expectedXMLContent, actualXMLContent));
     assertTrue(diff.identical() || diff.similar(),
-               "Differences between " + expectedXMLContent + " and " + actualXMLContent + "  found: " // NOI18N
-                   + diff.toString()); // NOI18N
+               "Differences between " + expectedXML + " and " + actualXML + "  found: " // NOI18N
+                   + String.join(System.lineSeparator(), differences)); // NOI18N
   }
 }
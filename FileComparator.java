@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) Experian, 2020. All rights reserved.
+ */
+package com.experian.automation.helpers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Content comparison of two files of any size.
+ * <p>
+ * By default the files are compared byte by byte in fixed size chunks, so memory does not depend on the file size.
+ * When end of lines are ignored the files are decoded with the configured charset and CR LF, CR and LF are all
+ * treated as the same line break. As in a line by line comparison, a missing line break at the end of a file is not
+ * a difference. The first difference is reported with its offset, line and column and a bounded
+ * window of the surrounding content.
+ * <p>
+ * Example: new FileComparator("C:/Temp/actual.txt", "C:/Temp/expected.txt").ignoreEOL(true).compare()
+ */
+public class FileComparator {
+
+  private static final int CHUNK_SIZE = 1024 * 1024;
+  private static final int DEFAULT_CONTEXT_SIZE = 40;
+
+  private final Path actual;
+  private final Path expected;
+
+  private boolean ignoreEOL = false;
+  private Charset charset = StandardCharsets.UTF_8;
+  private int contextSize = DEFAULT_CONTEXT_SIZE;
+
+  /**
+   * Instantiates a new File comparator.
+   *
+   * @param actual   The full path to the actual file (e.g C:/Temp/output.txt)
+   * @param expected The full path to the expected file (e.g C:/Temp/golden.txt)
+   */
+  public FileComparator(String actual, String expected) {
+    this.actual = Paths.get(actual);
+    this.expected = Paths.get(expected);
+  }
+
+  /**
+   * Treats CR LF, CR and LF line breaks as equal.
+   *
+   * @param ignoreEOL true to ignore the line break differences
+   * @return the file comparator
+   */
+// Builder method to ignore line break differences
+  public FileComparator ignoreEOL(boolean ignoreEOL) {
+    this.ignoreEOL = ignoreEOL;
+    return this;
+  }
+
+  /**
+   * Sets the charset used to decode the files (UTF-8 by default).
+   *
+   * @param charset the charset
+   * @return the file comparator
+   */
+// Builder method to set the charset
+  public FileComparator charset(Charset charset) {
+    this.charset = charset;
+    return this;
+  }
+
+  /**
+   * Sets the number of bytes (or characters when end of lines are ignored) shown before and after the difference.
+   *
+   * @param contextSize the context size
+   * @return the file comparator
+   */
+// Builder method to set the context size
+  public FileComparator contextSize(int contextSize) {
+    this.contextSize = contextSize;
+    return this;
+  }
+
+  /**
+   * Compares the files.
+   *
+   * @return a description of the first difference, or null if the files have the same content
+   * @throws IOException the io exception
+   */
+  public String compare() throws IOException {
+    return ignoreEOL ? compareText() : compareBytes();
+  }
+
+  private String compareBytes() throws IOException {
+    long actualSize = Files.size(actual);
+    long expectedSize = Files.size(expected);
+
+    long offset;
+    try (FileChannel actualChannel = FileChannel.open(actual, StandardOpenOption.READ);
+        FileChannel expectedChannel = FileChannel.open(expected, StandardOpenOption.READ)) {
+      offset = mismatch(actualChannel, expectedChannel, Math.min(actualSize, expectedSize));
+    }
+
+    if (offset < 0) {
+      if (actualSize == expectedSize) {
+        return null;
+      }
+      offset = Math.min(actualSize, expectedSize);
+    }
+
+    long[] lineAndColumn = lineAndColumn(offset);
+    String sizes = actualSize == expectedSize ? ""
+        : String.format(" Expected %s bytes but found %s bytes.", expectedSize, actualSize);
+    return String.format("Files differ at byte %s (line %s, column %s).%s%nExpected: %s%nActual:   %s", offset,
+                         lineAndColumn[0], lineAndColumn[1], sizes, byteContext(expected, offset),
+                         byteContext(actual, offset));
+  }
+
+  // Returns the offset of the first differing byte within the given length, or -1
+  private static long mismatch(FileChannel actualChannel, FileChannel expectedChannel, long length)
+      throws IOException {
+    byte[] actualChunk = new byte[CHUNK_SIZE];
+    byte[] expectedChunk = new byte[CHUNK_SIZE];
+    long position = 0;
+
+    while (position < length) {
+      int size = (int) Math.min(CHUNK_SIZE, length - position);
+      readFully(actualChannel, actualChunk, size, position);
+      readFully(expectedChannel, expectedChunk, size, position);
+
+      // Arrays.equals is an intrinsic; the differing index is only searched for once a full chunk differs
+      if (size < CHUNK_SIZE || !Arrays.equals(actualChunk, expectedChunk)) {
+        for (int i = 0; i < size; i++) {
+          if (actualChunk[i] != expectedChunk[i]) {
+            return position + i;
+          }
+        }
+      }
+      position += size;
+    }
+
+    return -1;
+  }
+
+  private static void readFully(FileChannel channel, byte[] chunk, int size, long position) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, size);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of file at " + (position + buffer.position()));
+      }
+    }
+  }
+
+  // Counts the line breaks before the offset; only needed once a difference is found
+  private long[] lineAndColumn(long offset) throws IOException {
+    long line = 1;
+    long lineStart = 0;
+
+    try (FileChannel channel = FileChannel.open(expected, StandardOpenOption.READ)) {
+      byte[] chunk = new byte[CHUNK_SIZE];
+      long position = 0;
+      while (position < offset) {
+        int size = (int) Math.min(CHUNK_SIZE, offset - position);
+        readFully(channel, chunk, size, position);
+        for (int i = 0; i < size; i++) {
+          if (chunk[i] == '\n') {
+            line++;
+            lineStart = position + i + 1;
+          }
+        }
+        position += size;
+      }
+    }
+
+    return new long[]{line, offset - lineStart + 1};
+  }
+
+  private String byteContext(Path path, long offset) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long from = Math.max(0, offset - contextSize);
+      int size = (int) Math.min(channel.size() - from, offset - from + contextSize);
+      byte[] bytes = new byte[Math.max(0, size)];
+      readFully(channel, bytes, bytes.length, from);
+      return format(new String(bytes, 0, (int) (offset - from), charset),
+                    new String(bytes, (int) (offset - from), bytes.length - (int) (offset - from), charset));
+    }
+  }
+
+  private String compareText() throws IOException {
+    try (Reader actualReader = new EOLNormalizingReader(actual, charset);
+        Reader expectedReader = new EOLNormalizingReader(expected, charset)) {
+
+      // Holds the last characters read, shown before the difference
+      char[] history = new char[contextSize];
+      long offset = 0;
+      long line = 1;
+      long column = 1;
+
+      while (true) {
+        int actualChar = actualReader.read();
+        int expectedChar = expectedReader.read();
+
+        if (actualChar != expectedChar) {
+          String before = history(history, offset);
+          return String.format("Files differ at character %s (line %s, column %s), ignoring EOL.%nExpected: %s%n"
+                                   + "Actual:   %s", offset, line, column,
+                               format(before, next(expectedChar, expectedReader)),
+                               format(before, next(actualChar, actualReader)));
+        }
+        if (actualChar < 0) {
+          return null;
+        }
+
+        if (contextSize > 0) {
+          history[(int) (offset % contextSize)] = (char) actualChar;
+        }
+        offset++;
+        if (actualChar == '\n') {
+          line++;
+          column = 1;
+        } else {
+          column++;
+        }
+      }
+    }
+  }
+
+  private String history(char[] history, long offset) {
+    StringBuilder before = new StringBuilder();
+    for (long i = Math.max(0, offset - contextSize); i < offset; i++) {
+      before.append(history[(int) (i % contextSize)]);
+    }
+    return before.toString();
+  }
+
+  private String next(int firstChar, Reader reader) throws IOException {
+    StringBuilder after = new StringBuilder();
+    int current = firstChar;
+    while (current >= 0 && after.length() < contextSize) {
+      after.append((char) current);
+      current = reader.read();
+    }
+    return after.toString();
+  }
+
+  private static String format(String before, String after) {
+    return "\"" + escape(before) + "[>>]" + escape(after) + "\"";
+  }
+
+  private static String escape(String text) {
+    return text.replace("\r", "\\r").replace("\n", "\\n").replace("\t", "\\t");
+  }
+
+  private static class EOLNormalizingReader extends Reader {
+
+    private final Reader reader;
+    private boolean afterCR = false;
+    private int last = -1;
+
+    private EOLNormalizingReader(Path path, Charset charset) throws IOException {
+      this.reader = new BufferedReader(new InputStreamReader(Files.newInputStream(path), charset), CHUNK_SIZE);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int current = readNormalized();
+      // A last line without line break reads as terminated, the same as comparing the files line by line
+      if (current < 0 && last >= 0 && last != '\n') {
+        current = '\n';
+      }
+      last = current;
+      return current;
+    }
+
+    private int readNormalized() throws IOException {
+      int current = reader.read();
+      if (afterCR && current == '\n') {
+        current = reader.read();
+      }
+      afterCR = current == '\r';
+      return afterCR ? '\n' : current;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+      int count = 0;
+      while (count < length) {
+        int current = read();
+        if (current < 0) {
+          return count == 0 ? -1 : count;
+        }
+        buffer[offset + count++] = (char) current;
+      }
+      return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+  }
+}
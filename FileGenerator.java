@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) Experian, 2020. All rights reserved.
+ */
+package com.experian.automation.helpers;
+
+import com.experian.automation.logger.Logger;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generation of large test input files (upload, archive and volume tests) without keeping big fixtures in the
+ * repository.
+ * <p>
+ * Record templates may contain the following placeholders:
+ * <ul>
+ * <li>{{index}} - the record number, starting 1</li>
+ * <li>{{random.int}}, {{random.long}}, {{random.double}} - random numbers</li>
+ * <li>{{random.string}} - 8 random lowercase letters</li>
+ * <li>{{random.uuid}} - a random UUID</li>
+ * </ul>
+ * Random values come from a seeded generator so the same seed always produces the same file.
+ */
+public class FileGenerator {
+
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  private static final int RANDOM_STRING_LENGTH = 8;
+  private static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{(index|random\\.(?:int|long|double|string|uuid))}}");
+
+  private final Logger logger = Logger.getLogger(this.getClass());
+
+  /**
+   * The kind of content used to fill a file of a given size.
+   */
+  public enum Content {
+    /**
+     * Only sets the file length; the file is sparse where the file system allows it.
+     */
+    SPARSE,
+    /**
+     * Writes zero bytes so the disk space is actually allocated.
+     */
+    ZEROS,
+    /**
+     * Writes seeded random bytes, which do not compress.
+     */
+    RANDOM
+  }
+
+  /**
+   * The record layout of a generated structured file.
+   */
+  public enum Format {
+    /**
+     * One record per line, optionally preceded by a header line.
+     */
+    CSV("", System.lineSeparator(), System.lineSeparator()),
+    /**
+     * Records written as the elements of a JSON array.
+     */
+    JSON("[" + System.lineSeparator(), "," + System.lineSeparator(), System.lineSeparator() + "]"),
+    /**
+     * Records written as the children of a records root element.
+     */
+    XML("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + System.lineSeparator() + "<records>" + System.lineSeparator(),
+        System.lineSeparator(), System.lineSeparator() + "</records>");
+
+    private final String prefix;
+    private final String separator;
+    private final String suffix;
+
+    Format(String prefix, String separator, String suffix) {
+      this.prefix = prefix;
+      this.separator = separator;
+      this.suffix = suffix;
+    }
+  }
+
+  /**
+   * Creates a file of a given size.
+   *
+   * @param file    The full path to the file (e.g C:/Temp/upload.bin)
+   * @param size    the file size in bytes
+   * @param content how the file is filled
+   * @param seed    the seed used for RANDOM content
+   * @throws IOException the io exception
+   */
+  public void createFile(String file, long size, Content content, long seed) throws IOException {
+    Path path = Paths.get(file);
+
+    if (content == Content.SPARSE) {
+      try (RandomAccessFile rafile = new RandomAccessFile(path.toFile(), "rw")) {
+        rafile.setLength(size);
+      }
+      return;
+    }
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      byte[] block = new byte[BUFFER_SIZE];
+      SplittableRandom random = new SplittableRandom(seed);
+      long written = 0;
+
+      while (written < size) {
+        int length = (int) Math.min(BUFFER_SIZE, size - written);
+        buffer.clear();
+        if (content == Content.RANDOM) {
+          fillRandom(random, block, length);
+        }
+        buffer.put(block, 0, length);
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+          written += channel.write(buffer);
+        }
+      }
+    }
+
+    logger.info(String.format("Created file %s with %s bytes of %s content", file, size, content));
+  }
+
+  private static void fillRandom(SplittableRandom random, byte[] block, int length) {
+    for (int i = 0; i < length; i += Long.BYTES) {
+      long value = random.nextLong();
+      for (int j = i; j < Math.min(i + Long.BYTES, length); j++) {
+        block[j] = (byte) value;
+        value >>>= Byte.SIZE;
+      }
+    }
+  }
+
+  /**
+   * Creates a structured file by repeating a record template. Records are streamed to the file so memory does not
+   * grow with the record count.
+   *
+   * @param file     The full path to the file (e.g C:/Temp/volume.csv)
+   * @param format   the record layout
+   * @param header   a header line written before the records (CSV only), may be null
+   * @param template the record template with placeholders
+   * @param count    the number of records
+   * @param seed     the seed of the random placeholder values
+   * @throws IOException the io exception
+   */
+  public void createRecordsFile(String file, Format format, String header, String template, long count, long seed)
+      throws IOException {
+    List<String> segments = new ArrayList<>();
+    List<String> placeholders = new ArrayList<>();
+    Matcher matcher = PLACEHOLDER.matcher(template);
+    int start = 0;
+    while (matcher.find()) {
+      segments.add(template.substring(start, matcher.start()));
+      placeholders.add(matcher.group(1));
+      start = matcher.end();
+    }
+    segments.add(template.substring(start));
+
+    SplittableRandom random = new SplittableRandom(seed);
+
+    try (Writer writer = new BufferedWriter(
+        new OutputStreamWriter(Files.newOutputStream(Paths.get(file)), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+
+      writer.write(format.prefix);
+      boolean separate = false;
+      if (header != null && format == Format.CSV) {
+        writer.write(header);
+        separate = true;
+      }
+
+      for (long index = 1; index <= count; index++) {
+        if (separate) {
+          writer.write(format.separator);
+        }
+        separate = true;
+        for (int i = 0; i < placeholders.size(); i++) {
+          writer.write(segments.get(i));
+          writer.write(placeholderValue(placeholders.get(i), index, random));
+        }
+        writer.write(segments.get(placeholders.size()));
+      }
+
+      writer.write(format.suffix);
+    }
+
+    logger.info(String.format("Created %s file %s with %s records", format, file, count));
+  }
+
+  private static String placeholderValue(String placeholder, long index, SplittableRandom random) {
+    switch (placeholder) {
+      case "index":
+        return Long.toString(index);
+      case "random.int":
+        return Integer.toString(random.nextInt());
+      case "random.long":
+        return Long.toString(random.nextLong());
+      case "random.double":
+        return Double.toString(random.nextDouble());
+      case "random.string":
+        char[] chars = new char[RANDOM_STRING_LENGTH];
+        for (int i = 0; i < chars.length; i++) {
+          chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+      case "random.uuid":
+        return new UUID(random.nextLong(), random.nextLong()).toString();
+      default:
+        throw new IllegalArgumentException("Unsupported placeholder " + placeholder);
+    }
+  }
+}
@@ -10,24 +10,18 @@ import static org.testng.Assert.fail;
 
 import com.experian.automation.helpers.ArchiversOperations;
 import com.experian.automation.helpers.CSVCellInput;
+import com.experian.automation.helpers.CSVFileIndex;
 import com.experian.automation.helpers.FSOperations;
+import com.experian.automation.helpers.FileGenerator;
 import com.experian.automation.helpers.JSONOperations;
 import com.experian.automation.helpers.RemoteFile;
 import com.experian.automation.helpers.TextFileOperations;
 import com.experian.automation.helpers.Variables;
 import com.experian.automation.helpers.XMLOperations;
+import com.experian.automation.helpers.YAMLOperations;
 import com.experian.automation.logger.Logger;
 import com.experian.automation.transformers.RemoteFileTransformer;
 import com.experian.automation.transformers.VariablesTransformer;
-import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
-import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator.Feature;
-import com.opencsv.CSVReader;
-import com.opencsv.CSVWriter;
 import io.cucumber.datatable.DataTable;
 import io.cucumber.java.en.And;
 import java.io.File;
@@ -36,7 +30,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
-import java.io.RandomAccessFile;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
@@ -101,9 +94,10 @@ public class FileOperationsSteps {
   private static final String SIMPLE_ACTIVITY_HOOK_PROP = "includeSimpleActivityHook";
   private static final String SIMPLE_ACTIVITY_HOOK_LOCATION_PROP = "simpleActivityHookLogLocation";
   private static final long TIMEOUT_MS = 10 * 1000L;
+  private static final int MAX_REPORTED_LINES = 100;
 
-  private static final String DOCUMENTBUILDERFACTORY = "javax.xml.parsers.DocumentBuilderFactory";
   private static final String DOCUMENTBUILDERFACTORYIMPL = "com.sun.org.apache.xerces.internal.jaxp.DocumentBuilderFactoryImpl";
+  private static final String TRANSFORMERFACTORYIMPL = "com.sun.org.apache.xalan.internal.xsltc.trax.TransformerFactoryImpl";
 
   private final Logger logger = Logger.getLogger(this.getClass());
 
@@ -403,6 +397,100 @@ public class FileOperationsSteps {
     }
   }
 
+  /**
+   * Verify that an archive contains some entries, reading only its directory.
+   *
+   * @param archivePath the archive path
+   * @param entries     the expected entry names
+   * @throws Throwable the throwable
+   */
+  /*
+   * Usage example(s):
+   *  I verify archive ${temp.dir}/solution.zip contains entries:
+   *    | metadata/solution.xml |
+   *    | flows/main.flow       |
+   */
+  @And("^I verify archive (.*) contains entries:$")
+  public void verifyArchiveEntries(String archivePath, List<String> entries) throws Throwable {
+
+    archivePath = VariablesTransformer.transformSingleValue(archivePath);
+    entries = VariablesTransformer.transformList(entries);
+
+    Set<String> archiveEntries = ArchiversOperations.listEntries(archivePath).keySet();
+    List<String> missingEntries = new ArrayList<>(entries);
+    missingEntries.removeAll(archiveEntries);
+
+    assertTrue(missingEntries.isEmpty(), "Archive " + archivePath + " does not contain entries " + missingEntries);
+  }
+
+  /**
+   * Compare two archives entry by entry (names, sizes and CRCs) without extracting them.
+   *
+   * @param actualPath   the actual archive path
+   * @param expectedPath the expected archive path
+   * @throws Throwable the throwable
+   */
+  /*
+   * Usage example(s):
+   *  I verify archive ${temp.dir}/output.zip has the same content as archive ${features.path}/data/golden.zip
+   */
+  @And("^I verify archive (.*) has the same content as archive (.*)$")
+  public void compareArchives(String actualPath, String expectedPath) throws Throwable {
+
+    actualPath = VariablesTransformer.transformSingleValue(actualPath);
+    expectedPath = VariablesTransformer.transformSingleValue(expectedPath);
+
+    List<String> differences = ArchiversOperations.compareArchives(expectedPath, actualPath);
+
+    assertTrue(differences.isEmpty(),
+               String.format("Archive %s differs from %s:%n%s", actualPath, expectedPath,
+                             String.join(System.lineSeparator(), differences)));
+  }
+
+  /**
+   * Extract only some entries of an archive.
+   *
+   * @param archivePath   the archive path
+   * @param dstFolderPath the dst folder path
+   * @param entries       the entry names to extract
+   * @throws Throwable the throwable
+   */
+  /*
+   * Usage example(s):
+   *  I extract entries from archive ${temp.dir}/solution.zip to ${temp.dir}/solution directory:
+   *    | metadata/solution.xml |
+   */
+  @And("^I extract entries from archive (.*) to (.*) directory:$")
+  public void extractArchiveEntries(String archivePath, String dstFolderPath, List<String> entries) throws Throwable {
+
+    archivePath = VariablesTransformer.transformSingleValue(archivePath);
+    dstFolderPath = VariablesTransformer.transformSingleValue(dstFolderPath);
+    entries = VariablesTransformer.transformList(entries);
+
+    ArchiversOperations.extractEntries(archivePath, entries, dstFolderPath);
+  }
+
+  /**
+   * Save the content of a single archive entry as variable, without extracting it to disk.
+   *
+   * @param entry       the entry name
+   * @param archivePath the archive path
+   * @param variable    the variable
+   * @throws Throwable the throwable
+   */
+  /*
+   * Usage example(s):
+   *  I save content of entry metadata/solution.xml from archive ${temp.dir}/solution.zip as variable solutionXml
+   */
+  @And("^I save content of entry (.*) from archive (.*) as variable (.*)$")
+  public void readArchiveEntry(String entry, String archivePath, String variable) throws Throwable {
+
+    entry = VariablesTransformer.transformSingleValue(entry);
+    archivePath = VariablesTransformer.transformSingleValue(archivePath);
+
+    Variables.set(variable, new String(ArchiversOperations.readEntry(archivePath, entry), StandardCharsets.UTF_8));
+  }
+
   /**
    * Create file.
    *
@@ -428,34 +516,83 @@ public class FileOperationsSteps {
   }
 
   /**
-   * Create file with size.
+   * Create file with size. By default the file is only preallocated (sparse where the file system allows it);
+   * zeros or seeded random bytes can be written instead, e.g. when the file is compressed or uploaded.
    *
    * @param filePath the file path
    * @param size     the size
    * @param unit     the unit
+   * @param content  optional content: zeros or random data
    * @throws Throwable the throwable
    */
-  @And("^I create file (.*) with size (\\d+) (kB|MB|GB)$")
-  public void createFileWithSize(String filePath, int size, String unit) throws Throwable {
+/*
+  And I create file ${temp.dir}/upload.bin with size 2 GB
+  And I create file ${temp.dir}/upload.bin with size 200 MB filled with random data
+   */
+  @And("^I create file (.*) with size (\\d+) (kB|MB|GB)(?: filled with (zeros|random data))?$")
+  public void createFileWithSize(String filePath, int size, String unit, String content) throws Throwable {
 
     filePath = VariablesTransformer.transformSingleValue(filePath);
 
-    File file = new File(filePath);
-    try (RandomAccessFile rafile = new RandomAccessFile(file, "rw")) {
-      switch (unit) {
-        case "kB":
-          rafile.setLength(1024 * size);
-          break;
-        case "MB":
-          rafile.setLength(1024 * 1024 * size);
-          break;
-        case "GB":
-          rafile.setLength(1024l * 1024 * 1024 * size);
-          break;
-        default:
-          throw new IllegalArgumentException("Unsupported unit " + unit);
-      }
+    long length;
+    switch (unit) {
+      case "kB":
+        length = 1024L * size;
+        break;
+      case "MB":
+        length = 1024L * 1024 * size;
+        break;
+      case "GB":
+        length = 1024L * 1024 * 1024 * size;
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported unit " + unit);
+    }
+
+    FileGenerator.Content fileContent = FileGenerator.Content.SPARSE;
+    if ("zeros".equals(content)) {
+      fileContent = FileGenerator.Content.ZEROS;
+    } else if ("random data".equals(content)) {
+      fileContent = FileGenerator.Content.RANDOM;
+    }
+
+    new FileGenerator().createFile(filePath, length, fileContent, 0L);
+  }
+
+  /**
+   * Create a CSV, JSON or XML file by repeating a record template, see {@link FileGenerator} for the supported
+   * placeholders. For CSV files with a two line template, the first line is written once as the header and the
+   * second line is the record template.
+   *
+   * @param format   the file format
+   * @param filePath the file path
+   * @param count    the number of records
+   * @param seed     optional seed of the random values, 0 by default
+   * @param template the record template
+   * @throws Throwable the throwable
+   */
+/*
+  And I create CSV file ${temp.dir}/volume.csv with 500000 records using seed 42 from template:
+  """
+  id,name,reference
+  {{index}},{{random.string}},{{random.uuid}}
+  """
+   */
+  @And("^I create (CSV|JSON|XML) file (.*) with (\\d+) records(?: using seed (\\d+))? from template:$")
+  public void createRecordsFile(String format, String filePath, long count, Long seed, String template)
+      throws Throwable {
+
+    filePath = VariablesTransformer.transformSingleValue(filePath);
+    template = VariablesTransformer.transformSingleValue(template, false).trim();
+
+    String header = null;
+    FileGenerator.Format fileFormat = FileGenerator.Format.valueOf(format);
+    if (fileFormat == FileGenerator.Format.CSV && template.contains("\n")) {
+      header = template.substring(0, template.indexOf('\n')).trim();
+      template = template.substring(template.indexOf('\n') + 1).trim();
     }
+
+    new FileGenerator().createRecordsFile(filePath, fileFormat, header, template, count, seed == null ? 0L : seed);
   }
 
   /**
@@ -511,31 +648,8 @@ public class FileOperationsSteps {
 
     targetPath = VariablesTransformer.transformSingleValue(targetPath);
     properties = VariablesTransformer.transformMap(properties);
-    ObjectMapper mapper = new ObjectMapper(new YAMLFactory().disable(Feature.WRITE_DOC_START_MARKER));
-    JsonNode tree = mapper.readTree(new File(targetPath));
-
-    for (String key : properties.keySet()) {
-      List<String> nodeList = Arrays.asList(key.split("\\."));
-
-      if (nodeList.size() == 1) {
-        ((ObjectNode) tree).put(nodeList.get(0), properties.get(key));
-      } else {
-        ObjectNode firstNode = (ObjectNode) tree.get(nodeList.get(0));
-
-        for (int i = 1; i < nodeList.size() - 1; i++) {
-          if (firstNode.get(nodeList.get(i)) == null) {
-            firstNode = (ObjectNode) firstNode.putObject(nodeList.get(i));
-          } else {
-            firstNode = (ObjectNode) firstNode.get(nodeList.get(i));
-          }
-        }
-
-        firstNode.put(nodeList.get(nodeList.size() - 1), properties.get(key));
-      }
-    }
-
-    ObjectWriter writer = mapper.writer(new DefaultPrettyPrinter());
-    writer.writeValue(new File(targetPath), tree);
+    YAMLOperations yamlOperations = new YAMLOperations();
+    yamlOperations.updateYAMLFile(targetPath, properties);
   }
 
   /**
@@ -791,15 +905,14 @@ public class FileOperationsSteps {
     template.render(model, featureFileStream);
     featureFileStream.close();
 
-    System.setProperty(DOCUMENTBUILDERFACTORY, DOCUMENTBUILDERFACTORYIMPL);
-    DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
+    DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance(DOCUMENTBUILDERFACTORYIMPL, null);
     docFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
     docFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
     // protect against Denial of Service attack and remote file access
     docFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
     DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
     Document tempDoc = docBuilder.parse(tempLocation);
-    DocumentBuilderFactory docFactoryP = DocumentBuilderFactory.newInstance();
+    DocumentBuilderFactory docFactoryP = DocumentBuilderFactory.newInstance(DOCUMENTBUILDERFACTORYIMPL, null);
     docFactoryP.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
     docFactoryP.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
     // protect against Denial of Service attack and remote file access
@@ -815,8 +928,7 @@ public class FileOperationsSteps {
       Element elem = (Element) importedLogger;
       parentLogger.getParentNode().insertBefore(elem, parentLogger);
     }
-    System.setProperty("javax.xml.transform.TransformerFactory","com.sun.org.apache.xalan.internal.xsltc.trax.TransformerFactoryImpl");
-    TransformerFactory transformerFactory = TransformerFactory.newInstance();
+    TransformerFactory transformerFactory = TransformerFactory.newInstance(TRANSFORMERFACTORYIMPL, null);
     transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
     transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
     // protect against remote file access
@@ -891,19 +1003,13 @@ public class FileOperationsSteps {
 
     filePath = VariablesTransformer.transformSingleValue(filePath);
 
-    System.setProperty(DOCUMENTBUILDERFACTORY, DOCUMENTBUILDERFACTORYIMPL);
-    DocumentBuilderFactory docBuilder = DocumentBuilderFactory.newInstance();
-    docBuilder.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-    docBuilder.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
-    // protect against Denial of Service attack and remote file access
-    docBuilder.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-    Document document = docBuilder.newDocumentBuilder().parse(filePath);
-    XPath xPath = XPathFactory.newInstance().newXPath();
-    NodeList nodeList = (NodeList) xPath.compile(xpathExpression).evaluate(document, XPathConstants.NODESET);
+    // Large files are streamed when the expression allows it
+    List<Node> nodes = XMLOperations.selectNodesFromXMLFile(filePath, xpathExpression);
 
-    Document newXMLDocument = docBuilder.newDocumentBuilder().newDocument();
-    for (int i = 0; i < nodeList.getLength(); i++) {
-      Node node = newXMLDocument.importNode(nodeList.item(i), true);
+    Document newXMLDocument = DocumentBuilderFactory.newInstance(DOCUMENTBUILDERFACTORYIMPL, null)
+        .newDocumentBuilder().newDocument();
+    for (Node selected : nodes) {
+      Node node = newXMLDocument.importNode(selected, true);
       newXMLDocument.appendChild(node);
     }
     String xmlString = XMLOperations.documentToString(newXMLDocument);
@@ -935,8 +1041,7 @@ public class FileOperationsSteps {
     tempXML.deleteOnExit();
     new FSOperations(fileHost, LOCALHOST_NAME).copyFile(filePath, tempXMLPath);
 
-    System.setProperty(DOCUMENTBUILDERFACTORY, DOCUMENTBUILDERFACTORYIMPL);
-    DocumentBuilderFactory docBuilder = DocumentBuilderFactory.newInstance();
+    DocumentBuilderFactory docBuilder = DocumentBuilderFactory.newInstance(DOCUMENTBUILDERFACTORYIMPL, null);
     docBuilder.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
     docBuilder.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
     // protect against Denial of Service attack and remote file access
@@ -957,8 +1062,7 @@ public class FileOperationsSteps {
     } else {
       targetDocument.getDocumentElement().insertBefore(nodeToInsert, targetNode);
     }
-    System.setProperty("javax.xml.transform.TransformerFactory","com.sun.org.apache.xalan.internal.xsltc.trax.TransformerFactoryImpl");
-    TransformerFactory transformerFactory = TransformerFactory.newInstance();
+    TransformerFactory transformerFactory = TransformerFactory.newInstance(TRANSFORMERFACTORYIMPL, null);
     transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
     transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
     // protect against remote file access
@@ -1134,10 +1238,8 @@ public class FileOperationsSteps {
 
     List<CSVCellInput> inputsTest = csvUpdates.asList(CSVCellInput.class);
 
-    // Loop to make all entry changes for defined cells in test
-    for (CSVCellInput csvInput : inputsTest) {
-      this.editCellInCSV(targetPath, csvInput.getValue(), csvInput.getRow(), csvInput.getCol());
-    }
+    // All entry changes for defined cells in test are applied with a single rewrite
+    CSVFileIndex.of(targetPath).updateCells(inputsTest);
   }
 
   /**
@@ -1153,21 +1255,18 @@ public class FileOperationsSteps {
   public void convertCSVtoJSON(String filePath, Integer rowNumber, String variableName) throws IOException {
 
     filePath = VariablesTransformer.transformSingleValue(filePath);
-    File csvFile = new File(filePath);
-
-    try (CSVReader csvReader = new CSVReader(new InputStreamReader(new FileInputStream(csvFile), StandardCharsets.UTF_8))) {
-      List<String[]> csvContent = csvReader.readAll();
+    CSVFileIndex csvIndex = CSVFileIndex.of(filePath);
 
-      if (rowNumber != null) {
-        Map<String, String> jsonData = mapCsvHeaderToValue(csvContent, rowNumber-1);
-        Variables.set(variableName, new JSONObject(jsonData).toString());
-      } else {
-        List<Map<String,String>> jsonObject = new ArrayList<>();
-        for (int row = 1; row <= csvContent.size() - 1; row++) {
-          jsonObject.add(mapCsvHeaderToValue(csvContent, row) );
-        }
-        Variables.set(variableName, JSONArray.toJSONString(jsonObject));
+    if (rowNumber != null) {
+      Map<String, String> jsonData = csvIndex.readRowAsMap(rowNumber - 1);
+      Variables.set(variableName, new JSONObject(jsonData).toString());
+    } else {
+      String[] headersValues = csvIndex.readRow(0);
+      List<Map<String,String>> jsonObject = new ArrayList<>();
+      for (String[] rowValues : csvIndex.readRows(1, csvIndex.rowCount())) {
+        jsonObject.add(mapCsvHeaderToValue(headersValues, rowValues));
       }
+      Variables.set(variableName, JSONArray.toJSONString(jsonObject));
     }
   }
 
@@ -1192,44 +1291,15 @@ public class FileOperationsSteps {
     jsonOperation.removeFromJsonFile(targetPath, jsonPathsToDelete);
   }
 
-  /**
-   * Edit CSV content by replacing value. For example on row 4, col 12 with dateVar so that file's content could be
-   * unique each time
-   *
-   * @param targetPath path of targeted file that needs to be updated
-   * @param value      value we want to put inside specific cell in file
-   * @param row        number of row of cell for update from file (starting 0)
-   * @param col        number of column of cell for update (starting 0)
-   */
-  private void editCellInCSV(String targetPath, String value, int row, int col) throws IOException {
-    //new CSVReader(new InputStreamReader(new FileInputStream(targetPath), StandardCharsets.UTF_8))
-    try (CSVReader reader = new CSVReader(
-        new InputStreamReader(new FileInputStream(targetPath), StandardCharsets.UTF_8))) {
-      List<String[]> values = reader.readAll();
-      values.get(row)[col] = value;
-
-      try (CSVWriter writer = new CSVWriter(
-          new OutputStreamWriter(new FileOutputStream(targetPath), StandardCharsets.UTF_8),
-          ',',
-          CSVWriter.NO_QUOTE_CHARACTER,
-          CSVWriter.NO_ESCAPE_CHARACTER,
-          System.getProperty("line.separator"))) {
-        writer.writeAll(values);
-      }
-    }
-  }
-
   /**
    * Creates a map between CSV header and a row value
    *
-   * @param csvContent    content of CSV file
-   * @param rowToProcess  row number from the CSV file
+   * @param headersValues  header row of the CSV file
+   * @param rowValues      row from the CSV file
    * @return header-value map
    */
-  private Map<String, String> mapCsvHeaderToValue (List<String[]> csvContent, int rowToProcess) {
+  private Map<String, String> mapCsvHeaderToValue (String[] headersValues, String[] rowValues) {
     Map<String, String> headerValueMap = new LinkedHashMap<>();
-    String[] headersValues = csvContent.get(0);
-    String[] rowValues = csvContent.get(rowToProcess);
 
     for (int i = 0; i < headersValues.length; i++) {
       headerValueMap.put(headersValues[i], rowValues[i]);
@@ -1325,15 +1395,16 @@ public class FileOperationsSteps {
     file1 = VariablesTransformer.transformSingleValue(file1);
     file2 = VariablesTransformer.transformSingleValue(file2);
 
-    List<String> file1Contents = Files.readAllLines(Paths.get(file1));
-    List<String> file2Contents = Files.readAllLines(Paths.get(file2));
+    Map<Long, String> missingLines = new TextFileOperations().findMissingLines(file1, file2, MAX_REPORTED_LINES);
 
-    for (String line : file1Contents) {
-      assertTrue(
-          file2Contents.contains(line),
-          String.format("File %s: does not contain %s.%nFile content: %s%n", file2, line, file2Contents) //NOI18N
-      );
-    }
+    StringBuilder report = new StringBuilder();
+    missingLines.forEach((lineNumber, line) -> report.append(String.format("line %d: %s%n", lineNumber, line)));
+
+    assertTrue(
+        missingLines.isEmpty(),
+        String.format("File %s: does not contain the following lines of file %s (first %d shown):%n%s", file2, file1,
+                      MAX_REPORTED_LINES, report) //NOI18N
+    );
   }
 
   /**
@@ -1385,9 +1456,9 @@ public class FileOperationsSteps {
   public void containsAttributes (String filePath, List<String> xpathExpressions)
       throws SAXException, ParserConfigurationException, XPathExpressionException, IOException {
     SoftAssert softAssert = new SoftAssert();
-    Document xmlDocument = XMLOperations.getXmlDocument(filePath);
+    Map<String, Boolean> results = XMLOperations.containsXpathsInXML(filePath, xpathExpressions);
     for (String xpathExpression : xpathExpressions) {
-      softAssert.assertTrue(XMLOperations.containsXpathInXML(xmlDocument, xpathExpression));
+      softAssert.assertTrue(results.get(xpathExpression));
     }
     softAssert.assertAll();
   }
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) Experian, 2020. All rights reserved.
+ */
+package com.experian.automation.helpers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jsonschema.main.JsonSchema;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process wide cache of the files read again and again by scenarios: golden files, schemas, request bodies.
+ * <p>
+ * Entries are keyed by the file path and stay valid for as long as the file size and modification time do not
+ * change. An entry holds the raw content, its SHA-256 digest and any parsed form of it (Jackson tree, compiled JSON
+ * schema, ...). The least recently used entries are evicted once the memory budget set by the fixture.cache.size.mb
+ * property (256 MB by default) is exceeded. Parsed forms are shared between callers and must not be modified.
+ * <p>
+ * Example: FixtureCache.jsonSchema("C:/Temp/schema.json")
+ */
+public class FixtureCache {
+
+  private static final String BUDGET_PROPERTY = "fixture.cache.size.mb";
+  private static final String DEFAULT_BUDGET_MB = "256";
+  // Files above this share of the budget are read but not kept
+  private static final int MAX_ENTRY_SHARE = 4;
+  // Rough in-memory size of a parsed form relative to the size of its source
+  private static final int PARSED_WEIGHT_FACTOR = 4;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final String JSON_TREE = "jsonTree";
+  private static final String JSON_SCHEMA = "jsonSchema";
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private static final Map<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private static long totalWeight = 0L;
+  private static Long budget;
+
+  private FixtureCache() {
+  }
+
+  /**
+   * Parses the content of a file.
+   *
+   * @param <T> the type of the parsed form
+   */
+  @FunctionalInterface
+  public interface Parser<T> {
+
+    /**
+     * Parses file content.
+     *
+     * @param content the file content
+     * @return the parsed form
+     * @throws Exception the exception
+     */
+    T parse(byte[] content) throws Exception;
+  }
+
+  /**
+   * Gets the content of a file.
+   *
+   * @param file The full path to the file (e.g C:/Temp/request.json)
+   * @return a copy of the file content
+   * @throws IOException the io exception
+   */
+  public static byte[] bytes(String file) throws IOException {
+    return content(entry(file)).clone();
+  }
+
+  /**
+   * Gets the content of a file as UTF-8 text.
+   *
+   * @param file The full path to the file (e.g C:/Temp/request.json)
+   * @return the file content
+   * @throws IOException the io exception
+   */
+  public static String text(String file) throws IOException {
+    return new String(content(entry(file)), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Gets the SHA-256 digest of a file. Files too large to be cached are digested as a stream and only their digest is
+   * kept.
+   *
+   * @param file The full path to the file (e.g C:/Temp/golden.json)
+   * @return the Base64 encoded digest
+   * @throws IOException the io exception
+   */
+  public static String digest(String file) throws IOException {
+    Entry entry = entry(file);
+    if (entry.digest == null) {
+      byte[] content = entry.content;
+      if (content != null) {
+        entry.digest = Base64.getEncoder().encodeToString(newDigest().digest(content));
+      } else {
+        entry.digest = streamDigest(entry.path);
+      }
+    }
+    return entry.digest;
+  }
+
+  /**
+   * Gets the SHA-256 digest of a text, e.g. to key compiled schemas by their content.
+   *
+   * @param content the text, encoded as UTF-8
+   * @return the Base64 encoded digest
+   * @throws IOException the io exception
+   */
+  public static String digestOf(String content) throws IOException {
+    return Base64.getEncoder().encodeToString(newDigest().digest(content.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Tells whether a file has the same content as a fixture, comparing their sizes and digests only. Only the digest of
+   * the fixture is cached: the other file is usually just written by the test, possibly with the same size and
+   * modification time as a previous version, so it is digested on every call.
+   *
+   * @param fixture The full path to the fixture, e.g. a golden file
+   * @param file    The full path to the file compared to the fixture
+   * @return true if the files have the same content
+   * @throws IOException the io exception
+   */
+  public static boolean sameContent(String fixture, String file) throws IOException {
+    Path fixturePath = Paths.get(fixture).toAbsolutePath().normalize();
+    Path path = Paths.get(file).toAbsolutePath().normalize();
+    if (fixturePath.equals(path)) {
+      return true;
+    }
+    return Files.size(fixturePath) == Files.size(path) && digest(fixture).equals(streamDigest(path));
+  }
+
+  /**
+   * Gets a parsed form of a file, parsing it on first use.
+   *
+   * @param <T>    the type of the parsed form
+   * @param file   The full path to the file
+   * @param kind   the name of the parsed form, unique per parser
+   * @param parser the parser
+   * @return the parsed form, shared with the other callers
+   * @throws IOException the io exception, or the parser exception wrapped in an io exception
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T parsed(String file, String kind, Parser<T> parser) throws IOException {
+    Entry entry = entry(file);
+    Object value = entry.parsed.get(kind);
+    if (value == null) {
+      byte[] content = content(entry);
+      try {
+        value = parser.parse(content);
+      } catch (IOException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IOException("Could not parse " + file, e);
+      }
+      if (entry.content != null && entry.parsed.putIfAbsent(kind, value) == null) {
+        addWeight(entry, (long) content.length * PARSED_WEIGHT_FACTOR);
+      }
+    }
+    return (T) value;
+  }
+
+  /**
+   * Gets the Jackson tree of a JSON file.
+   *
+   * @param file The full path to the JSON file
+   * @return the JSON tree, which must not be modified
+   * @throws IOException the io exception
+   */
+  public static JsonNode jsonTree(String file) throws IOException {
+    return parsed(file, JSON_TREE, mapper::readTree);
+  }
+
+  /**
+   * Gets the compiled JSON schema of a schema file.
+   *
+   * @param file The full path to the JSON schema file
+   * @return the JSON schema
+   * @throws IOException the io exception
+   */
+  public static JsonSchema jsonSchema(String file) throws IOException {
+    JsonNode schemaNode = jsonTree(file);
+    return parsed(file, JSON_SCHEMA, content -> JSONOperations.schemaFactory.getJsonSchema(schemaNode));
+  }
+
+  /**
+   * Removes all entries.
+   */
+  public static void clear() {
+    synchronized (entries) {
+      entries.clear();
+      totalWeight = 0L;
+    }
+  }
+
+  private static Entry entry(String file) throws IOException {
+    Path path = Paths.get(file).toAbsolutePath().normalize();
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    long size = attributes.size();
+    long lastModified = attributes.lastModifiedTime().toMillis();
+
+    synchronized (entries) {
+      Entry entry = entries.get(path);
+      if (entry == null || entry.size != size || entry.lastModified != lastModified) {
+        if (entry != null) {
+          totalWeight -= entry.weight;
+        }
+        entry = new Entry(path, size, lastModified);
+        entries.put(path, entry);
+      }
+      return entry;
+    }
+  }
+
+  private static byte[] content(Entry entry) throws IOException {
+    byte[] content = entry.content;
+    if (content == null) {
+      content = Files.readAllBytes(entry.path);
+      if (content.length <= budget() / MAX_ENTRY_SHARE) {
+        // Threads missing together all read the file, only the one keeping its content adds the weight
+        synchronized (entries) {
+          if (entry.content == null) {
+            entry.content = content;
+            addWeight(entry, content.length);
+          }
+        }
+      }
+    }
+    return content;
+  }
+
+  private static void addWeight(Entry entry, long weight) {
+    synchronized (entries) {
+      if (entries.get(entry.path) != entry) {
+        return;
+      }
+      entry.weight += weight;
+      totalWeight += weight;
+
+      Iterator<Entry> eldest = entries.values().iterator();
+      while (totalWeight > budget() && eldest.hasNext()) {
+        Entry evicted = eldest.next();
+        if (evicted != entry) {
+          totalWeight -= evicted.weight;
+          eldest.remove();
+        }
+      }
+    }
+  }
+
+  private static long budget() {
+    if (budget == null) {
+      budget = Long.parseLong(Config.getOrDefault(BUDGET_PROPERTY, DEFAULT_BUDGET_MB)) * 1024 * 1024;
+    }
+    return budget;
+  }
+
+  private static String streamDigest(Path path) throws IOException {
+    MessageDigest messageDigest = newDigest();
+    try (InputStream input = Files.newInputStream(path)) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = input.read(buffer)) != -1) {
+        messageDigest.update(buffer, 0, read);
+      }
+    }
+    return Base64.getEncoder().encodeToString(messageDigest.digest());
+  }
+
+  private static MessageDigest newDigest() throws IOException {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static class Entry {
+
+    private final Path path;
+    private final long size;
+    private final long lastModified;
+    private final Map<String, Object> parsed = new ConcurrentHashMap<>();
+
+    private volatile byte[] content;
+    private volatile String digest;
+    private long weight = 0L;
+
+    private Entry(Path path, long size, long lastModified) {
+      this.path = path;
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) Experian, 2020. All rights reserved.
+ */
+package com.experian.automation.helpers;
+
+import com.mashape.unirest.http.Unirest;
+import java.io.IOException;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContextBuilder;
+
+/**
+ * Process wide pool of HTTP connections used by the Unirest requests of the API operations.
+ * <p>
+ * All the requests share one connection manager, so connections are kept alive between requests and scenarios and
+ * TLS sessions are resumed instead of negotiated again. Like the clients it replaces, it trusts all certificates and
+ * host names. The limits are read from the configuration: http.pool.max.total (200 by default),
+ * http.pool.max.per.route (20 by default), http.pool.keep.alive.ms for servers that do not send a keep-alive
+ * timeout (30000 by default), http.pool.idle.timeout.ms (60000 by default), and the optional http.proxy.host and
+ * http.proxy.port.
+ * <p>
+ * Timeouts, cookie management and the cookie store belong to the thread running the scenario, so parallel scenarios
+ * do not see each other's settings or cookies. They are reset when API operations are created, as creating them used
+ * to install a new client. Threads sending requests for a scenario, e.g. load test workers, use the scenario settings
+ * through {@link #getSettings()} and {@link #useSettings(Settings)}.
+ * <p>
+ * Example: HttpClientPool.setMaxPerRoute("https://host:8443", 50)
+ */
+public class HttpClientPool {
+
+  private static final String MAX_TOTAL_PROPERTY = "http.pool.max.total";
+  private static final String MAX_PER_ROUTE_PROPERTY = "http.pool.max.per.route";
+  private static final String KEEP_ALIVE_PROPERTY = "http.pool.keep.alive.ms";
+  private static final String IDLE_TIMEOUT_PROPERTY = "http.pool.idle.timeout.ms";
+  private static final String PROXY_HOST_PROPERTY = "http.proxy.host";
+  private static final String PROXY_PORT_PROPERTY = "http.proxy.port";
+
+  private static final long VALIDATE_AFTER_INACTIVITY_MS = 2000L;
+  private static final long EVICTION_INTERVAL_MS = 5000L;
+
+  private static final PoolingHttpClientConnectionManager connectionManager = createConnectionManager();
+  private static final CloseableHttpClient cookieClient = createClient(true);
+  private static final CloseableHttpClient cookielessClient = createClient(false);
+  private static final ScenarioClient scenarioClient = new ScenarioClient();
+
+  private static final ThreadLocal<Settings> settings = ThreadLocal.withInitial(Settings::new);
+
+  private static boolean installed = false;
+
+  private HttpClientPool() {
+  }
+
+  private static PoolingHttpClientConnectionManager createConnectionManager() {
+    SSLContext sslContext;
+    try {
+      sslContext = new SSLContextBuilder().loadTrustMaterial(null, (x509Certificates, s) -> true).build();
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Could not create the SSL context", e);
+    }
+    Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+        .register("https", new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE))
+        .build();
+
+    PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager(registry);
+    manager.setMaxTotal(Integer.parseInt(Config.getOrDefault(MAX_TOTAL_PROPERTY, "200")));
+    manager.setDefaultMaxPerRoute(Integer.parseInt(Config.getOrDefault(MAX_PER_ROUTE_PROPERTY, "20")));
+    manager.setValidateAfterInactivity((int) VALIDATE_AFTER_INACTIVITY_MS);
+
+    long idleTimeout = Long.parseLong(Config.getOrDefault(IDLE_TIMEOUT_PROPERTY, "60000"));
+    new IdleConnectionEvictor(manager, EVICTION_INTERVAL_MS, TimeUnit.MILLISECONDS, idleTimeout,
+                              TimeUnit.MILLISECONDS).start();
+    return manager;
+  }
+
+  private static CloseableHttpClient createClient(boolean cookieManagement) {
+    long keepAlive = Long.parseLong(Config.getOrDefault(KEEP_ALIVE_PROPERTY, "30000"));
+    HttpClientBuilder builder = HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setConnectionManagerShared(true)
+        .setKeepAliveStrategy((response, context) -> {
+          long timeout = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+          return timeout > 0 ? timeout : keepAlive;
+        });
+
+    String proxyHost = Config.getOrDefault(PROXY_HOST_PROPERTY, "");
+    if (StringUtils.isNotEmpty(proxyHost)) {
+      builder.setProxy(new HttpHost(proxyHost, Integer.parseInt(Config.getOrDefault(PROXY_PORT_PROPERTY, "-1"))));
+    }
+    if (!cookieManagement) {
+      builder.disableCookieManagement();
+    }
+    return builder.build();
+  }
+
+  /**
+   * Makes Unirest send its requests through the pool.
+   */
+  public static synchronized void install() {
+    if (!installed) {
+      Unirest.setHttpClient(scenarioClient);
+      installed = true;
+    }
+  }
+
+  /**
+   * Resets the settings of the current thread: no timeouts, cookie management enabled and an empty cookie store.
+   */
+  public static void reset() {
+    settings.set(new Settings());
+  }
+
+  /**
+   * Gets the settings of the current thread, to send requests with them from other threads.
+   *
+   * @return the settings, shared and not copied: the cookie store stays the same
+   */
+  public static Settings getSettings() {
+    return settings.get();
+  }
+
+  /**
+   * Makes the current thread send its requests with the settings of another thread.
+   *
+   * @param threadSettings the settings returned by {@link #getSettings()} on the other thread
+   */
+  public static void useSettings(Settings threadSettings) {
+    settings.set(threadSettings);
+  }
+
+  /**
+   * Sets the timeouts of the requests sent by the current thread.
+   *
+   * @param connectionTimeout the connection timeout in milliseconds
+   * @param socketTimeout     the socket timeout in milliseconds
+   */
+  public static void setTimeouts(int connectionTimeout, int socketTimeout) {
+    settings.get().requestConfig = RequestConfig.custom()
+        .setConnectTimeout(connectionTimeout)
+        .setSocketTimeout(socketTimeout)
+        .build();
+  }
+
+  /**
+   * Stops keeping the cookies received by the current thread.
+   */
+  public static void disableCookieManagement() {
+    settings.get().cookieManagement = false;
+  }
+
+  /**
+   * Sets the number of connections that can be open to a host at the same time.
+   *
+   * @param url            the url of the host (e.g. https://host:8443/path)
+   * @param maxConnections the maximum number of connections
+   */
+  public static void setMaxPerRoute(String url, int maxConnections) {
+    HttpHost host = URIUtils.extractHost(URI.create(url));
+    if (host == null) {
+      throw new IllegalArgumentException("No host in url " + url);
+    }
+    try {
+      host = new HttpHost(host.getHostName(), DefaultSchemePortResolver.INSTANCE.resolve(host), host.getSchemeName());
+    } catch (IOException e) {
+      throw new IllegalArgumentException(e);
+    }
+    connectionManager.setMaxPerRoute(new HttpRoute(host, null, "https".equalsIgnoreCase(host.getSchemeName())),
+                                     maxConnections);
+    if (connectionManager.getMaxTotal() < maxConnections) {
+      connectionManager.setMaxTotal(maxConnections);
+    }
+  }
+
+  /**
+   * Timeouts, cookie management and cookie store used by a thread.
+   */
+  public static final class Settings {
+
+    private volatile RequestConfig requestConfig;
+    private volatile boolean cookieManagement = true;
+    // BasicCookieStore is synchronized and can be shared by several threads
+    private final CookieStore cookieStore = new BasicCookieStore();
+
+    private Settings() {
+    }
+  }
+
+  // Client installed in Unirest, sending each request with the settings of the current thread
+  private static class ScenarioClient extends CloseableHttpClient {
+
+    @Override
+    protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context)
+        throws IOException, ClientProtocolException {
+      Settings current = settings.get();
+      HttpClientContext clientContext = context == null ? HttpClientContext.create()
+          : HttpClientContext.adapt(context);
+
+      if (current.requestConfig != null && clientContext.getAttribute(HttpClientContext.REQUEST_CONFIG) == null) {
+        clientContext.setRequestConfig(current.requestConfig);
+      }
+      if (clientContext.getCookieStore() == null) {
+        clientContext.setCookieStore(current.cookieStore);
+      }
+      CloseableHttpClient client = current.cookieManagement ? cookieClient : cookielessClient;
+      return client.execute(target, request, clientContext);
+    }
+
+    // The pool is shared by the whole process and outlives Unirest.shutdown()
+    @Override
+    public void close() {
+      // Nothing to close
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public HttpParams getParams() {
+      return cookieClient.getParams();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public ClientConnectionManager getConnectionManager() {
+      return cookieClient.getConnectionManager();
+    }
+  }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) Experian, 2020. All rights reserved.
+ */
+package com.experian.automation.helpers;
+
+import com.experian.automation.logger.Logger;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import javax.imageio.ImageIO;
+
+/**
+ * Perceptual hash index over a directory of baseline images.
+ * <p>
+ * Each image gets a 64 bit average hash, difference hash and DCT based perceptual hash. Similar images have hashes
+ * with a small Hamming distance, which makes it cheap to find the closest baselines of a screenshot and to run the
+ * full pixel comparison only for those. The hashes are persisted in a {@value #INDEX_FILE} file inside the
+ * directory and only recomputed for images added or changed since.
+ * <p>
+ * Example: ImageHashIndex.of("C:/baselines").closest(new File("C:/Temp/screenshot.png"), HashType.PHASH, 5)
+ */
+public class ImageHashIndex {
+
+  /**
+   * The name of the file the index is persisted to.
+   */
+  public static final String INDEX_FILE = ".image-hash-index";
+
+  private static final int HASH_SIZE = 8;
+  private static final int DCT_SIZE = 32;
+  private static final double[][] DCT_COEFFICIENTS = dctCoefficients();
+
+  private static final Map<Path, ImageHashIndex> indexes = new ConcurrentHashMap<>();
+
+  private final Logger logger = Logger.getLogger(this.getClass());
+
+  private final Path directory;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * The supported perceptual hashes.
+   */
+  public enum HashType {
+    /**
+     * Average hash: pixels of an 8x8 grayscale thumbnail compared to their mean.
+     */
+    AHASH,
+    /**
+     * Difference hash: horizontal gradients of a 9x8 grayscale thumbnail.
+     */
+    DHASH,
+    /**
+     * Perceptual hash: low frequencies of the DCT of a 32x32 grayscale thumbnail compared to their median.
+     */
+    PHASH
+  }
+
+  private ImageHashIndex(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Returns the up to date index of a baseline directory, hashing only the images added or changed since the index
+   * was last saved.
+   *
+   * @param baselineDirectory The full path to the baseline directory (e.g C:/Temp/baselines)
+   * @return the image hash index
+   * @throws IOException the io exception
+   */
+  public static ImageHashIndex of(String baselineDirectory) throws IOException {
+    Path directory = Paths.get(baselineDirectory).toAbsolutePath().normalize();
+    ImageHashIndex index = indexes.computeIfAbsent(directory, ImageHashIndex::new);
+
+    synchronized (index) {
+      index.refresh();
+    }
+    return index;
+  }
+
+  private void refresh() throws IOException {
+    if (entries.isEmpty()) {
+      load();
+    }
+
+    boolean changed = false;
+    List<File> images = new ArrayList<>();
+    File[] files = directory.toFile().listFiles(file -> file.isFile() && isImage(file.getName()));
+    if (files != null) {
+      images.addAll(Arrays.asList(files));
+    }
+
+    List<String> names = images.stream().map(File::getName).collect(Collectors.toList());
+    changed |= entries.keySet().retainAll(names);
+
+    for (File image : images) {
+      Entry entry = entries.get(image.getName());
+      if (entry == null || entry.size != image.length() || entry.lastModified != image.lastModified()) {
+        BufferedImage bufferedImage = ImageIO.read(image);
+        if (bufferedImage == null) {
+          continue;
+        }
+        entries.put(image.getName(), new Entry(image.length(), image.lastModified(), hashes(bufferedImage)));
+        changed = true;
+      }
+    }
+
+    if (changed) {
+      save();
+      logger.info(String.format("Image hash index of %s updated with %s images", directory, entries.size()));
+    }
+  }
+
+  private void load() throws IOException {
+    Path indexFile = directory.resolve(INDEX_FILE);
+    if (!Files.exists(indexFile)) {
+      return;
+    }
+
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    }
+
+    for (String name : properties.stringPropertyNames()) {
+      String[] values = properties.getProperty(name).split(",");
+      if (values.length == 2 + HashType.values().length) {
+        long[] hashes = new long[HashType.values().length];
+        for (int i = 0; i < hashes.length; i++) {
+          hashes[i] = Long.parseUnsignedLong(values[2 + i], 16);
+        }
+        entries.put(name, new Entry(Long.parseLong(values[0]), Long.parseLong(values[1]), hashes));
+      }
+    }
+  }
+
+  private void save() throws IOException {
+    Properties properties = new Properties();
+    entries.forEach((name, entry) -> {
+      StringBuilder value = new StringBuilder().append(entry.size).append(',').append(entry.lastModified);
+      for (long hash : entry.hashes) {
+        value.append(',').append(Long.toHexString(hash));
+      }
+      properties.setProperty(name, value.toString());
+    });
+
+    Path temp = Files.createTempFile(directory, INDEX_FILE, ".tmp");
+    try {
+      try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+        properties.store(writer, "Perceptual hashes: size,lastModified,aHash,dHash,pHash");
+      }
+      FSOperations.moveAtomically(temp, directory.resolve(INDEX_FILE));
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Finds the baselines closest to an image.
+   *
+   * @param image       the image to look up
+   * @param hashType    the hash used to measure similarity
+   * @param maxDistance the maximal Hamming distance (0-64) of the returned baselines
+   * @return the baseline files, closest first
+   * @throws IOException the io exception
+   */
+  public List<Match> closest(File image, HashType hashType, int maxDistance) throws IOException {
+    BufferedImage bufferedImage = ImageIO.read(image);
+    if (bufferedImage == null) {
+      throw new IOException("Unsupported image format: " + image);
+    }
+
+    long hash = hash(bufferedImage, hashType);
+    List<Match> matches = new ArrayList<>();
+    entries.forEach((name, entry) -> {
+      int distance = distance(hash, entry.hashes[hashType.ordinal()]);
+      if (distance <= maxDistance) {
+        matches.add(new Match(directory.resolve(name).toFile(), distance));
+      }
+    });
+
+    matches.sort(Comparator.comparingInt(Match::getDistance));
+    return matches;
+  }
+
+  /**
+   * Computes the Hamming distance between two hashes.
+   *
+   * @param firstHash  the first hash
+   * @param secondHash the second hash
+   * @return the number of differing bits (0-64)
+   */
+  public static int distance(long firstHash, long secondHash) {
+    return Long.bitCount(firstHash ^ secondHash);
+  }
+
+  /**
+   * Computes a perceptual hash of an image.
+   *
+   * @param image    the image
+   * @param hashType the hash type
+   * @return the 64 bit hash
+   */
+  public static long hash(BufferedImage image, HashType hashType) {
+    switch (hashType) {
+      case AHASH:
+        return averageHash(grayscale(image, HASH_SIZE, HASH_SIZE));
+      case DHASH:
+        return differenceHash(grayscale(image, HASH_SIZE + 1, HASH_SIZE));
+      default:
+        return perceptualHash(grayscale(image, DCT_SIZE, DCT_SIZE));
+    }
+  }
+
+  private static long[] hashes(BufferedImage image) {
+    long[] hashes = new long[HashType.values().length];
+    for (HashType hashType : HashType.values()) {
+      hashes[hashType.ordinal()] = hash(image, hashType);
+    }
+    return hashes;
+  }
+
+  private static long averageHash(double[][] pixels) {
+    double mean = 0;
+    for (double[] row : pixels) {
+      for (double pixel : row) {
+        mean += pixel;
+      }
+    }
+    mean /= HASH_SIZE * HASH_SIZE;
+
+    long hash = 0;
+    for (double[] row : pixels) {
+      for (double pixel : row) {
+        hash = (hash << 1) | (pixel > mean ? 1 : 0);
+      }
+    }
+    return hash;
+  }
+
+  private static long differenceHash(double[][] pixels) {
+    long hash = 0;
+    for (double[] row : pixels) {
+      for (int x = 0; x < HASH_SIZE; x++) {
+        hash = (hash << 1) | (row[x + 1] > row[x] ? 1 : 0);
+      }
+    }
+    return hash;
+  }
+
+  private static long perceptualHash(double[][] pixels) {
+    // Separable 2D DCT, only the low frequency 8x8 block is needed
+    double[][] rows = new double[DCT_SIZE][HASH_SIZE];
+    for (int y = 0; y < DCT_SIZE; y++) {
+      for (int u = 0; u < HASH_SIZE; u++) {
+        double sum = 0;
+        for (int x = 0; x < DCT_SIZE; x++) {
+          sum += pixels[y][x] * DCT_COEFFICIENTS[u][x];
+        }
+        rows[y][u] = sum;
+      }
+    }
+
+    double[] frequencies = new double[HASH_SIZE * HASH_SIZE];
+    for (int v = 0; v < HASH_SIZE; v++) {
+      for (int u = 0; u < HASH_SIZE; u++) {
+        double sum = 0;
+        for (int y = 0; y < DCT_SIZE; y++) {
+          sum += rows[y][u] * DCT_COEFFICIENTS[v][y];
+        }
+        frequencies[v * HASH_SIZE + u] = sum;
+      }
+    }
+
+    // The DC coefficient is left out of the median as it only reflects the overall brightness
+    double[] sorted = Arrays.copyOfRange(frequencies, 1, frequencies.length);
+    Arrays.sort(sorted);
+    double median = sorted[sorted.length / 2];
+
+    long hash = 0;
+    for (double frequency : frequencies) {
+      hash = (hash << 1) | (frequency > median ? 1 : 0);
+    }
+    return hash;
+  }
+
+  private static double[][] grayscale(BufferedImage image, int width, int height) {
+    BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = thumbnail.createGraphics();
+    graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    graphics.drawImage(image, 0, 0, width, height, null);
+    graphics.dispose();
+
+    double[][] pixels = new double[height][width];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int rgb = thumbnail.getRGB(x, y);
+        pixels[y][x] = 0.299 * ((rgb >> 16) & 0xff) + 0.587 * ((rgb >> 8) & 0xff) + 0.114 * (rgb & 0xff);
+      }
+    }
+    return pixels;
+  }
+
+  private static double[][] dctCoefficients() {
+    double[][] coefficients = new double[HASH_SIZE][DCT_SIZE];
+    for (int u = 0; u < HASH_SIZE; u++) {
+      for (int x = 0; x < DCT_SIZE; x++) {
+        coefficients[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * DCT_SIZE));
+      }
+    }
+    return coefficients;
+  }
+
+  private static boolean isImage(String fileName) {
+    String name = fileName.toLowerCase(Locale.ROOT);
+    return name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".bmp")
+        || name.endsWith(".gif");
+  }
+
+  private static class Entry {
+
+    private final long size;
+    private final long lastModified;
+    private final long[] hashes;
+
+    private Entry(long size, long lastModified, long[] hashes) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.hashes = hashes;
+    }
+  }
+
+  /**
+   * A baseline image and its Hamming distance to the looked up image.
+   */
+  public static class Match {
+
+    private final File baseline;
+    private final int distance;
+
+    private Match(File baseline, int distance) {
+      this.baseline = baseline;
+      this.distance = distance;
+    }
+
+    public File getBaseline() {
+      return baseline;
+    }
+
+    public int getDistance() {
+      return distance;
+    }
+
+    @Override
+    public String toString() {
+      return baseline.getName() + " (distance " + distance + ")";
+    }
+  }
+}
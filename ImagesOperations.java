@@ -5,11 +5,19 @@ package com.experian.automation.helpers;
 
 import com.experian.automation.logger.Logger;
 
+import java.awt.Rectangle;
 import java.io.DataInputStream;
 import java.io.FileInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
 
@@ -18,10 +26,13 @@ import java.io.IOException;
  */
 public class ImagesOperations {
 
+  private static final int STRIPE_HEIGHT = 32;
+  private static final int IGNORED_COLOR = 0x4040a0;
+
   private final Logger logger = Logger.getLogger(this.getClass());
 
   /**
-   * Compare images boolean.
+   * Compare images boolean. The raw raster data of both images is compared.
    *
    * @param firstImageSrc  the first image src
    * @param secondImageSrc the second image src
@@ -30,24 +41,29 @@ public class ImagesOperations {
    */
   public boolean compareImages(File firstImageSrc, File secondImageSrc) throws IOException {
 
-    BufferedImage imageOne = ImageIO.read(firstImageSrc);
-    DataBuffer imageOneBuffer = imageOne.getData().getDataBuffer();
+    BufferedImage imageOne = readImage(firstImageSrc);
+    DataBuffer imageOneBuffer = imageOne.getRaster().getDataBuffer();
     int sizeA = imageOneBuffer.getSize();
-    BufferedImage imageTwo = ImageIO.read(secondImageSrc);
-    DataBuffer imageTwoBuffer = imageTwo.getData().getDataBuffer();
+    BufferedImage imageTwo = readImage(secondImageSrc);
+    DataBuffer imageTwoBuffer = imageTwo.getRaster().getDataBuffer();
     int sizeB = imageTwoBuffer.getSize();
-    if (sizeA == sizeB) {
-      for (int i = 0; i < sizeA; i++) {
-        if (imageOneBuffer.getElem(i) != imageTwoBuffer.getElem(i)) {
-          return false;
-        }
-      }
-      return true;
-    } else {
+    if (sizeA != sizeB) {
       logger.info("Images have different sizes...");
       return false;
     }
 
+    if (imageOneBuffer instanceof DataBufferInt && imageTwoBuffer instanceof DataBufferInt) {
+      return Arrays.equals(((DataBufferInt) imageOneBuffer).getData(), ((DataBufferInt) imageTwoBuffer).getData());
+    }
+    if (imageOneBuffer instanceof DataBufferByte && imageTwoBuffer instanceof DataBufferByte) {
+      return Arrays.equals(((DataBufferByte) imageOneBuffer).getData(), ((DataBufferByte) imageTwoBuffer).getData());
+    }
+    for (int i = 0; i < sizeA; i++) {
+      if (imageOneBuffer.getElem(i) != imageTwoBuffer.getElem(i)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
@@ -61,54 +77,213 @@ public class ImagesOperations {
    */
   public boolean compareSimilarImages(String firstImage, String secondImage, double differencePercentage)
       throws IOException {
-    BufferedImage imgA = null;
-    BufferedImage imgB = null;
+    return compareSimilarImages(firstImage, secondImage, differencePercentage, Collections.emptyList(), null);
+  }
+
+  /**
+   * Compares files difference based on a given percentage, skipping some regions (e.g. clocks or generated ids on a
+   * screenshot) and optionally writing a heat map of the differences.
+   *
+   * @param firstImage           - The path to the first image which we want to compare
+   * @param secondImage          - The path to the second image which we want to compare
+   * @param differencePercentage - How similar do we want the images to be
+   * @param ignoreRegions        - Regions excluded from the comparison
+   * @param diffImage            - The path to the PNG heat map to write, or null. Differences are shown from yellow
+   *                             (small) to red (large), ignored regions in blue
+   * @return A boolean value indicating whether the images are similar or not
+   * @throws IOException the io exception
+   */
+  public boolean compareSimilarImages(String firstImage, String secondImage, double differencePercentage,
+      List<Rectangle> ignoreRegions, String diffImage) throws IOException {
 
-    try {
-      File fileA = new File(firstImage);
-      File fileB = new File(secondImage);
+    BufferedImage imgA = readImage(new File(firstImage));
+    BufferedImage imgB = readImage(new File(secondImage));
 
-      imgA = ImageIO.read(fileA);
-      imgB = ImageIO.read(fileB);
-    } catch (IOException e) {
-      System.out.println(e);
+    if ((imgA.getWidth() != imgB.getWidth()) || (imgA.getHeight() != imgB.getHeight())) {
+      logger.info(String.format("Images %s and %s have different dimensions", firstImage, secondImage));
+      return false;
     }
 
-    int widthImgA = imgA.getWidth();
-    int widthImgB = imgB.getWidth();
-    int heightImgA = imgA.getHeight();
-    int heightImgB = imgB.getHeight();
+    double percentage = differencePercentage(imgA, imgB, differencePercentage, ignoreRegions,
+                                             diffImage == null ? null : new File(diffImage));
+    logger.info(String.format("Images %s and %s differ by %.6f%%", firstImage, secondImage, percentage));
 
-    if ((widthImgA != widthImgB) || (heightImgA != heightImgB)) {
-      return false;
-    } else {
-      long difference = 0;
-      for (int y = 0; y < heightImgA; y++) {
-        for (int x = 0; x < widthImgB; x++) {
-          int rgbA = imgA.getRGB(x, y);
-          int rgbB = imgB.getRGB(x, y);
-          int redA = (rgbA >> 16) & 0xff;
-          int greenA = (rgbA >> 8) & 0xff;
-          int blueA = (rgbA) & 0xff;
-          int redB = (rgbB >> 16) & 0xff;
-          int greenB = (rgbB >> 8) & 0xff;
-          int blueB = (rgbB) & 0xff;
-          difference += Math.abs(redA - redB);
-          difference += Math.abs(greenA - greenB);
-          difference += Math.abs(blueA - blueB);
+    return (percentage <= differencePercentage);
+  }
+
+  /**
+   * Finds a baseline similar to an image in a baseline directory. Baselines are first screened with the perceptual
+   * hash index of the directory and the pixel comparison only runs for the candidates within the Hamming distance,
+   * closest first.
+   *
+   * @param image                - The path to the image (e.g. a screenshot)
+   * @param baselineDirectory    - The path to the directory with the baseline images
+   * @param differencePercentage - How similar do we want the images to be
+   * @param maxDistance          - The maximal perceptual hash distance (0-64) of the compared baselines
+   * @return the first similar baseline or null if none is similar
+   * @throws IOException the io exception
+   */
+  public File findSimilarBaseline(String image, String baselineDirectory, double differencePercentage,
+      int maxDistance) throws IOException {
+
+    List<ImageHashIndex.Match> candidates = ImageHashIndex.of(baselineDirectory)
+        .closest(new File(image), ImageHashIndex.HashType.PHASH, maxDistance);
+    logger.info(String.format("Baseline candidates for %s: %s", image, candidates));
+
+    for (ImageHashIndex.Match candidate : candidates) {
+      if (compareSimilarImages(image, candidate.getBaseline().getPath(), differencePercentage)) {
+        return candidate.getBaseline();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Computes the average per channel difference of two images, as a percentage. The raster data is compared in
+   * parallel row stripes.
+   *
+   * @param imgA          the first image
+   * @param imgB          the second image
+   * @param stopAbove     percentage above which the comparison may stop early, returning a value above it; ignored
+   *                      when a diff image is requested
+   * @param ignoreRegions regions excluded from the comparison
+   * @param diffImage     the PNG heat map to write, or null
+   * @return the difference percentage, positive infinity if the images have different dimensions so that no allowed
+   * percentage accepts them
+   * @throws IOException the io exception
+   */
+  public double differencePercentage(BufferedImage imgA, BufferedImage imgB, double stopAbove,
+      List<Rectangle> ignoreRegions, File diffImage) throws IOException {
+
+    int width = imgA.getWidth();
+    int height = imgA.getHeight();
+
+    if ((width != imgB.getWidth()) || (height != imgB.getHeight())) {
+      logger.info("Images have different dimensions...");
+      return Double.POSITIVE_INFINITY;
+    }
+
+    int[] pixelsA = rgbPixels(imgA);
+    int[] pixelsB = rgbPixels(imgB);
+    boolean[] ignored = ignoreMask(width, height, ignoreRegions);
+    int[] heatMap = diffImage == null ? null : new int[width * height];
+
+    long comparedPixels = (long) width * height;
+    if (ignored != null) {
+      for (boolean pixelIgnored : ignored) {
+        comparedPixels -= pixelIgnored ? 1 : 0;
+      }
+    }
+    if (comparedPixels == 0) {
+      return 0;
+    }
+
+    long budget = heatMap == null ? (long) Math.floor(stopAbove / 100 * 255 * 3 * comparedPixels) : Long.MAX_VALUE;
+    AtomicLong difference = new AtomicLong();
+    int stripes = (height + STRIPE_HEIGHT - 1) / STRIPE_HEIGHT;
+
+    IntStream.range(0, stripes).parallel().forEach(stripe -> {
+      int lastRow = Math.min(height, (stripe + 1) * STRIPE_HEIGHT);
+      for (int y = stripe * STRIPE_HEIGHT; y < lastRow && difference.get() <= budget; y++) {
+        long rowDifference = 0;
+        for (int i = y * width; i < (y + 1) * width; i++) {
+          if (ignored != null && ignored[i]) {
+            if (heatMap != null) {
+              heatMap[i] = IGNORED_COLOR;
+            }
+            continue;
+          }
+          int rgbA = pixelsA[i];
+          int rgbB = pixelsB[i];
+          int pixelDifference = Math.abs(((rgbA >> 16) & 0xff) - ((rgbB >> 16) & 0xff))
+              + Math.abs(((rgbA >> 8) & 0xff) - ((rgbB >> 8) & 0xff))
+              + Math.abs((rgbA & 0xff) - (rgbB & 0xff));
+          rowDifference += pixelDifference;
+          if (heatMap != null) {
+            heatMap[i] = heatColor(rgbA, pixelDifference);
+          }
         }
+        difference.addAndGet(rowDifference);
       }
+    });
 
-      double total_pixels = widthImgA * heightImgA * 3;
+    if (heatMap != null) {
+      BufferedImage heatImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      heatImage.setRGB(0, 0, width, height, heatMap, 0, width);
+      ImageIO.write(heatImage, "png", diffImage);
+    }
 
-      double avg_different_pixels = difference /
-          total_pixels;
+    double avgDifferentPixels = difference.get() / (comparedPixels * 3.0);
+    return (avgDifferentPixels / 255) * 100;
+  }
 
-      double percentage = (avg_different_pixels /
-          255) * 100;
+  private static BufferedImage readImage(File imageFile) throws IOException {
+    BufferedImage image = ImageIO.read(imageFile);
+    if (image == null) {
+      throw new IOException("Unsupported image format: " + imageFile);
+    }
+    return image;
+  }
+
+  // Packed 0xRRGGBB values of all pixels, taken straight from the raster for the common image types
+  private static int[] rgbPixels(BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    DataBuffer buffer = image.getRaster().getDataBuffer();
+    boolean wholeRaster = image.getRaster().getParent() == null && buffer.getNumBanks() == 1;
+
+    if (wholeRaster && buffer instanceof DataBufferInt
+        && (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB)) {
+      return ((DataBufferInt) buffer).getData();
+    }
+
+    if (wholeRaster && buffer instanceof DataBufferByte
+        && (image.getType() == BufferedImage.TYPE_3BYTE_BGR || image.getType() == BufferedImage.TYPE_4BYTE_ABGR)) {
+      byte[] data = ((DataBufferByte) buffer).getData();
+      int pixelStride = image.getType() == BufferedImage.TYPE_3BYTE_BGR ? 3 : 4;
+      int blue = pixelStride - 3;
+      int[] pixels = new int[width * height];
+
+      IntStream.range(0, height).parallel().forEach(y -> {
+        for (int i = y * width; i < (y + 1) * width; i++) {
+          int offset = i * pixelStride + blue;
+          pixels[i] = ((data[offset + 2] & 0xff) << 16) | ((data[offset + 1] & 0xff) << 8) | (data[offset] & 0xff);
+        }
+      });
+      return pixels;
+    }
+
+    return image.getRGB(0, 0, width, height, null, 0, width);
+  }
+
+  private static boolean[] ignoreMask(int width, int height, List<Rectangle> ignoreRegions) {
+    if (ignoreRegions == null || ignoreRegions.isEmpty()) {
+      return null;
+    }
+
+    boolean[] mask = new boolean[width * height];
+    Rectangle bounds = new Rectangle(0, 0, width, height);
+    for (Rectangle region : ignoreRegions) {
+      Rectangle area = region.intersection(bounds);
+      if (area.isEmpty()) {
+        continue;
+      }
+      for (int y = area.y; y < area.y + area.height; y++) {
+        Arrays.fill(mask, y * width + area.x, y * width + area.x + area.width, true);
+      }
+    }
+    return mask;
+  }
 
-      return (percentage <= differencePercentage);
+  private static int heatColor(int rgb, int pixelDifference) {
+    if (pixelDifference == 0) {
+      // Unchanged pixels are shown as a faded grayscale of the first image
+      int gray = (((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff)) / 3;
+      int faded = 192 + gray / 4;
+      return (faded << 16) | (faded << 8) | faded;
     }
+    int intensity = Math.min(255, pixelDifference / 3);
+    return (0xff << 16) | ((255 - intensity) << 8);
   }
 
   /**
@@ -4,20 +4,14 @@
 package com.experian.automation.helpers;
 
 import com.experian.automation.logger.Logger;
-import com.fasterxml.jackson.core.JsonParser.Feature;
-import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
 import com.github.fge.jsonschema.core.exceptions.ProcessingException;
 import com.github.fge.jsonschema.main.JsonSchema;
 import com.github.fge.jsonschema.main.JsonSchemaFactory;
-import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.PathNotFoundException;
-import com.jayway.jsonpath.spi.json.JacksonJsonNodeJsonProvider;
-import com.jayway.jsonpath.spi.mapper.JacksonMappingProvider;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -25,9 +19,15 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
@@ -47,6 +47,23 @@ import org.skyscreamer.jsonassert.comparator.CustomComparator;
 public class JSONOperations {
   private final Logger logger = Logger.getLogger(this.getClass());
 
+  private static final int DOCUMENT_CACHE_SIZE = 4;
+  private static final int PATH_CACHE_SIZE = 1024;
+  private static final int SCHEMA_CACHE_SIZE = 64;
+
+  // The mapper and the schema factory are thread safe once configured
+  private static final ObjectMapper mapper = new ObjectMapper();
+  static final JsonSchemaFactory schemaFactory = JsonSchemaFactory.byDefault();
+
+  // Compiled schemas by SHA-256 of the schema content
+  private static final Map<String, JsonSchema> schemas = LRUCache.synchronizedOf(SCHEMA_CACHE_SIZE);
+
+  // Parsed documents by JSON content; steps checking many fields of a response parse it only once
+  private static final Map<String, DocumentContext> documents = LRUCache.synchronizedOf(DOCUMENT_CACHE_SIZE);
+
+  // Compiled JSON paths by expression
+  private static final Map<String, JsonPath> jsonPaths = LRUCache.synchronizedOf(PATH_CACHE_SIZE);
+
 
   /**
    * Validate json boolean.
@@ -58,14 +75,25 @@ public class JSONOperations {
    * @throws ProcessingException the processing exception
    */
   public boolean validateJSON(String jsonString, String schemaString) throws IOException, ProcessingException {
-    ObjectMapper mapper = new ObjectMapper();
-    JsonNode jsonFileNode = mapper.readTree(jsonString);
-    JsonNode jsonSchemaNode = mapper.readTree(schemaString);
-
-    JsonSchemaFactory factory = JsonSchemaFactory.byDefault();
-    JsonSchema schema = factory.getJsonSchema(jsonSchemaNode);
+    return validateJSON(jsonString, compileSchema(schemaString));
+  }
 
-    return schema.validInstance(jsonFileNode);
+  /**
+   * Compile json schema, reusing the schema compiled earlier from the same content.
+   *
+   * @param schemaString the schema string
+   * @return the json schema
+   * @throws IOException         the io exception
+   * @throws ProcessingException the processing exception
+   */
+  public JsonSchema compileSchema(String schemaString) throws IOException, ProcessingException {
+    String key = FixtureCache.digestOf(schemaString);
+    JsonSchema schema = schemas.get(key);
+    if (schema == null) {
+      schema = schemaFactory.getJsonSchema(mapper.readTree(schemaString));
+      schemas.put(key, schema);
+    }
+    return schema;
   }
 
   /**
@@ -78,7 +106,55 @@ public class JSONOperations {
    * @throws ProcessingException the processing exception
    */
   public boolean validateJSON(String jsonString, File schemaFile) throws IOException, ProcessingException {
-    return validateJSON(jsonString, FileUtils.readFileToString(schemaFile, StandardCharsets.UTF_8));
+    return validateJSON(jsonString, FixtureCache.jsonSchema(schemaFile.getPath()));
+  }
+
+  /**
+   * Validate json boolean.
+   *
+   * @param jsonString the json string
+   * @param schema     the compiled schema
+   * @return the boolean
+   * @throws IOException         the io exception
+   * @throws ProcessingException the processing exception
+   */
+  public boolean validateJSON(String jsonString, JsonSchema schema) throws IOException, ProcessingException {
+    return schema.validInstance(mapper.readTree(jsonString));
+  }
+
+  /**
+   * Validate json files in parallel against one schema.
+   *
+   * @param jsonFiles the json files
+   * @param schema    the compiled schema
+   * @return whether each file is valid, in the order of the files
+   * @throws IOException         the io exception
+   * @throws ProcessingException the processing exception
+   */
+  public Map<String, Boolean> validateJSONFiles(List<String> jsonFiles, JsonSchema schema)
+      throws IOException, ProcessingException {
+    try {
+      return ForkJoinPool.commonPool().submit(() -> jsonFiles.parallelStream().collect(Collectors.toMap(
+          jsonFile -> jsonFile,
+          jsonFile -> {
+            try {
+              return schema.validInstance(mapper.readTree(new File(jsonFile)));
+            } catch (IOException | ProcessingException e) {
+              throw new CompletionException(e);
+            }
+          },
+          (first, second) -> first,
+          LinkedHashMap::new))).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Validation of JSON files was interrupted", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+      if (cause instanceof ProcessingException) {
+        throw (ProcessingException) cause;
+      }
+      throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
   }
 
   /**
@@ -90,8 +166,6 @@ public class JSONOperations {
    * @throws IOException the io exception
    */
   public boolean compare(String jsonString, String jsonString2) throws IOException {
-    ObjectMapper mapper = new ObjectMapper();
-
     JsonNode jsonNode1 = mapper.readTree(jsonString);
     JsonNode jsonNode2 = mapper.readTree(jsonString2);
 
@@ -122,7 +196,7 @@ public class JSONOperations {
    * @throws IOException the io exception
    */
   public boolean compare(String jsonString, File jsonFile) throws IOException {
-    return compare(jsonString, FileUtils.readFileToString(jsonFile, StandardCharsets.UTF_8));
+    return mapper.readTree(jsonString).equals(FixtureCache.jsonTree(jsonFile.getPath()));
   }
 
   /**
@@ -134,14 +208,36 @@ public class JSONOperations {
    */
   public String evaluateJSONPath(String jsonString, String jsonPath) {
     try {
-      DocumentContext docCtx = JsonPath.parse(jsonString);
-      return docCtx.read(jsonPath) == null ? "null" : docCtx.read(jsonPath).toString();
+      Object value = parse(jsonString).read(compile(jsonPath));
+      return value == null ? "null" : value.toString();
     } catch (PathNotFoundException e) {
       logger.debug(String.format("Path not found. Path: %s. JSON: %s", jsonPath, jsonString)); //NOI18N
       throw new PathNotFoundException(e);
     }
   }
 
+  /**
+   * Evaluate several json paths on the same json string, parsing it only once.
+   *
+   * @param jsonString the json string
+   * @param jsonPaths  the json paths
+   * @return the values by json path, in the order of the paths
+   */
+  public Map<String, String> evaluateJSONPaths(String jsonString, Collection<String> jsonPaths) {
+    DocumentContext docCtx = parse(jsonString);
+    Map<String, String> values = new LinkedHashMap<>();
+    for (String jsonPath : jsonPaths) {
+      try {
+        Object value = docCtx.read(compile(jsonPath));
+        values.put(jsonPath, value == null ? "null" : value.toString());
+      } catch (PathNotFoundException e) {
+        logger.debug(String.format("Path not found. Path: %s. JSON: %s", jsonPath, jsonString)); //NOI18N
+        throw new PathNotFoundException(e);
+      }
+    }
+    return values;
+  }
+
   /**
    * Gets value from json file.
    *
@@ -164,8 +260,9 @@ public class JSONOperations {
    */
   public List<String> evaluateJSONPathForMultipleValues(String jsonString, String jsonPath) {
     try {
-      DocumentContext docCtx = JsonPath.parse(jsonString);
-      return docCtx.read(jsonPath) == null ? Collections.emptyList() : docCtx.read(jsonPath);
+      List<String> values = parse(jsonString).read(compile(jsonPath));
+      // The parsed document is shared, callers get their own list
+      return values == null ? Collections.emptyList() : new ArrayList<>(values);
     } catch (PathNotFoundException e) {
       logger.debug(String.format("Path not found. Path: %s. JSON: %s", jsonPath, jsonString)); //NOI18N
       throw new PathNotFoundException(e);
@@ -195,39 +292,12 @@ public class JSONOperations {
   public void modifyJsonFile(String targetPath, Map<String, String> properties)
       throws IOException {
 
-    ObjectMapper mapper = new ObjectMapper();
-    mapper.configure(Feature.ALLOW_UNQUOTED_CONTROL_CHARS, true);
-    JsonNode tree = mapper.readTree(new File(targetPath));
-
-    Configuration configuration = Configuration.builder()
-        .jsonProvider(new JacksonJsonNodeJsonProvider())
-        .mappingProvider(new JacksonMappingProvider())
-        .build();
-
-    // Parse the tree
-    DocumentContext docContext = JsonPath.using(configuration).parse(tree);
-
-    // Update all values
-    for (String key : properties.keySet()) {
-      try {
-        docContext.read(key);
-        // Update if found
-        docContext.set(key, defineJSONValueType(properties.get(key)));
-      } catch (PathNotFoundException e) {
-        // Create if parent exists
-        String parentNodeJsonPath = key.substring(0, key.lastIndexOf('['));
-        if (docContext.read(parentNodeJsonPath) != null) {
-          String parentNodeName = key.substring(key.lastIndexOf('[') + 2, key.lastIndexOf(']') - 1);
-
-          docContext.put(parentNodeJsonPath, parentNodeName, defineJSONValueType(properties.get(key)));
-        }
-      }
+    // Update all values, creating the missing ones whose parent exists
+    JSONPatch patch = new JSONPatch();
+    for (Map.Entry<String, String> property : properties.entrySet()) {
+      patch.set(property.getKey(), defineJSONValueType(property.getValue()));
     }
-
-    // Save updated JSON
-    docContext.json();
-    ObjectWriter writer = mapper.writer(new DefaultPrettyPrinter());
-    writer.writeValue(new File(targetPath), tree);
+    patch.apply(targetPath);
   }
 
   /**
@@ -281,7 +351,6 @@ public class JSONOperations {
     } else if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
       return Boolean.valueOf(value);
     } else if (value.startsWith("{") && value.endsWith("}")) {
-      ObjectMapper mapper = new ObjectMapper();
       return mapper.readTree(value);
     }
     return value;
@@ -338,21 +407,24 @@ public class JSONOperations {
    * @throws IOException the io exception
    */
   public void removeFromJsonFile(String targetPath, List<String> jsonPathsToDelete) throws IOException {
-    ObjectMapper mapper = new ObjectMapper();
-    JsonNode tree = mapper.readTree(new File(targetPath));
-    Configuration configuration = Configuration.builder()
-            .jsonProvider(new JacksonJsonNodeJsonProvider())
-            .mappingProvider(new JacksonMappingProvider())
-            .build();
-    // Parse the tree
-    DocumentContext docContext = JsonPath.using(configuration).parse(tree);
-
+    JSONPatch patch = new JSONPatch();
     for (String jsonPathToDelete : jsonPathsToDelete) {
-      docContext.delete(jsonPathToDelete);
+      patch.remove(jsonPathToDelete);
     }
-    // Save updated JSON
-    docContext.json();
-    ObjectWriter writer = mapper.writer(new DefaultPrettyPrinter());
-    writer.writeValue(new File(targetPath), tree);
+    patch.apply(targetPath);
+  }
+
+  // A new response is a new string, so a changed response variable is parsed again
+  private static DocumentContext parse(String jsonString) {
+    DocumentContext docCtx = documents.get(jsonString);
+    if (docCtx == null) {
+      docCtx = JsonPath.parse(jsonString);
+      documents.put(jsonString, docCtx);
+    }
+    return docCtx;
+  }
+
+  private static JsonPath compile(String jsonPath) {
+    return jsonPaths.computeIfAbsent(jsonPath, JsonPath::compile);
   }
 }
\ No newline at end of file
@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) Experian, 2020. All rights reserved.
+ */
+package com.experian.automation.helpers;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.InvalidModificationException;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.PathNotFoundException;
+import com.jayway.jsonpath.spi.json.JacksonJsonNodeJsonProvider;
+import com.jayway.jsonpath.spi.mapper.JacksonMappingProvider;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A batch of edits applied to a JSON file in one pass.
+ * <p>
+ * The operations have the JsonPath meaning: set replaces the values at a path, or creates the field when only the
+ * parent object exists; add appends a value to the arrays at a path; remove deletes the values at a path. When all
+ * the paths are definite (e.g. $['data'].items[0].id) and independent of each other, the file is copied token by
+ * token with Jackson streaming parser and generator, and only the edited values are touched. Wildcards, filters,
+ * deep scans and paths edited by more than one operation are applied in order to the whole tree instead.
+ * <p>
+ * The result is written to a temporary file which then replaces the target, so a failed patch leaves the file as it
+ * was.
+ * <p>
+ * Example: new JSONPatch().set("$.id", 10L).remove("$['tmp']").apply("C:/Temp/file.json")
+ */
+public class JSONPatch {
+
+  private static final ObjectMapper mapper = new ObjectMapper()
+      .configure(JsonParser.Feature.ALLOW_UNQUOTED_CONTROL_CHARS, true);
+
+  private static final Configuration configuration = Configuration.builder()
+      .jsonProvider(new JacksonJsonNodeJsonProvider())
+      .mappingProvider(new JacksonMappingProvider())
+      .build();
+
+  private static final Pattern SEGMENT = Pattern.compile(
+      "\\.?\\['([^'\\\\]*)'\\]|\\.?\\[\"([^\"\\\\]*)\"\\]|\\[(\\d+)\\]|\\.([^.\\[\\]*()'\"?@,\\s]+)");
+
+  private enum Type { SET, ADD, REMOVE }
+
+  private final List<Operation> operations = new ArrayList<>();
+
+  /**
+   * Sets the values at a path, or creates the field when the path is missing and its parent object exists.
+   *
+   * @param jsonPath the json path
+   * @param value    the value (a string, number, boolean, JsonNode or null)
+   * @return the JSON patch
+   */
+// Builder method to add a set operation
+  public JSONPatch set(String jsonPath, Object value) {
+    operations.add(new Operation(Type.SET, jsonPath, value));
+    return this;
+  }
+
+  /**
+   * Appends a value to the arrays at a path.
+   *
+   * @param jsonPath the json path of the arrays
+   * @param value    the value (a string, number, boolean, JsonNode or null)
+   * @return the JSON patch
+   */
+// Builder method to add an add operation
+  public JSONPatch add(String jsonPath, Object value) {
+    operations.add(new Operation(Type.ADD, jsonPath, value));
+    return this;
+  }
+
+  /**
+   * Removes the values at a path. Missing fields and elements are ignored.
+   *
+   * @param jsonPath the json path
+   * @return the JSON patch
+   */
+// Builder method to add a remove operation
+  public JSONPatch remove(String jsonPath) {
+    operations.add(new Operation(Type.REMOVE, jsonPath, null));
+    return this;
+  }
+
+  /**
+   * Applies the operations to a JSON file, which is written back pretty printed.
+   *
+   * @param file The full path to the JSON file (e.g C:/Temp/file.json)
+   * @throws IOException the io exception
+   */
+  public void apply(String file) throws IOException {
+    Path target = Paths.get(file).toAbsolutePath();
+    Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+
+    try {
+      Node root = streamable();
+      if (root != null) {
+        applyStreaming(root, target, temp);
+      } else {
+        applyToTree(target, temp);
+      }
+      FSOperations.moveAtomically(temp, target);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  // Operations by path segment; null when the operations have to be applied to the tree
+  private Node streamable() {
+    Node root = new Node();
+    List<Operation> parsed = new ArrayList<>();
+
+    for (Operation operation : operations) {
+      operation.segments = segments(operation.path);
+      if (operation.segments == null || operation.segments.isEmpty()) {
+        return null;
+      }
+      for (Operation other : parsed) {
+        if (dependent(operation, other)) {
+          return null;
+        }
+      }
+      parsed.add(operation);
+
+      Node node = root;
+      for (Object segment : operation.segments) {
+        node = node.children.computeIfAbsent(segment, key -> new Node());
+      }
+      node.operations.add(operation);
+    }
+    return root;
+  }
+
+  // Definite path segments: field names and array indexes, or null for any other JsonPath
+  private static List<Object> segments(String path) {
+    if (!path.startsWith("$")) {
+      return null;
+    }
+    List<Object> segments = new ArrayList<>();
+    Matcher matcher = SEGMENT.matcher(path);
+    int position = 1;
+    while (position < path.length()) {
+      if (!matcher.find(position) || matcher.start() != position) {
+        return null;
+      }
+      if (matcher.group(3) != null) {
+        try {
+          segments.add(Integer.valueOf(matcher.group(3)));
+        } catch (NumberFormatException e) {
+          return null;
+        }
+      } else {
+        segments.add(matcher.group(1) != null ? matcher.group(1)
+            : matcher.group(2) != null ? matcher.group(2) : matcher.group(4));
+      }
+      position = matcher.end();
+    }
+    return segments;
+  }
+
+  // Applying the operations in order may give another result than applying them all at once
+  private static boolean dependent(Operation operation, Operation other) {
+    if (operation.type == Type.ADD && other.type == Type.ADD && operation.segments.equals(other.segments)) {
+      return false;
+    }
+    if (startsWith(operation.segments, other.segments) || startsWith(other.segments, operation.segments)) {
+      return true;
+    }
+    // Removing an array element moves the next ones
+    return shifts(operation, other) || shifts(other, operation);
+  }
+
+  private static boolean shifts(Operation removal, Operation other) {
+    if (removal.type != Type.REMOVE || !(removal.segments.get(removal.segments.size() - 1) instanceof Integer)) {
+      return false;
+    }
+    return startsWith(other.segments, removal.segments.subList(0, removal.segments.size() - 1));
+  }
+
+  private static boolean startsWith(List<Object> segments, List<Object> prefix) {
+    return segments.size() >= prefix.size() && segments.subList(0, prefix.size()).equals(prefix);
+  }
+
+  private void applyStreaming(Node root, Path source, Path temp) throws IOException {
+    try (JsonParser parser = mapper.getFactory().createParser(source.toFile());
+        JsonGenerator generator = mapper.getFactory().createGenerator(temp.toFile(), JsonEncoding.UTF8)) {
+      generator.setPrettyPrinter(new DefaultPrettyPrinter());
+      if (parser.nextToken() != null) {
+        copy(parser, generator, root);
+      }
+    }
+
+    for (Operation operation : operations) {
+      if (!operation.applied) {
+        checkUnapplied(root, operation);
+      }
+    }
+  }
+
+  // Copies the value at the current token, applying the operations below it
+  private void copy(JsonParser parser, JsonGenerator generator, Node node) throws IOException {
+    JsonToken token = parser.getCurrentToken();
+    node.reachedAs = token;
+
+    if (node.children.isEmpty() && node.operations.isEmpty()) {
+      generator.copyCurrentStructure(parser);
+    } else if (token == JsonToken.START_OBJECT) {
+      copyObject(parser, generator, node);
+    } else if (token == JsonToken.START_ARRAY) {
+      copyArray(parser, generator, node);
+    } else {
+      generator.copyCurrentEvent(parser);
+    }
+  }
+
+  private void copyObject(JsonParser parser, JsonGenerator generator, Node node) throws IOException {
+    generator.writeStartObject();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      Node child = node.children.get(name);
+      parser.nextToken();
+
+      if (child != null && replace(parser, generator, child, name)) {
+        continue;
+      }
+      generator.writeFieldName(name);
+      if (child != null) {
+        copy(parser, generator, child);
+      } else {
+        generator.copyCurrentStructure(parser);
+      }
+    }
+
+    // Fields set below an existing object are created
+    for (Map.Entry<Object, Node> entry : node.children.entrySet()) {
+      for (Operation operation : entry.getValue().operations) {
+        if (operation.type == Type.SET && !operation.applied && entry.getKey() instanceof String) {
+          generator.writeFieldName((String) entry.getKey());
+          generator.writeObject(operation.value);
+          operation.applied = true;
+        }
+      }
+    }
+    generator.writeEndObject();
+  }
+
+  private void copyArray(JsonParser parser, JsonGenerator generator, Node node) throws IOException {
+    generator.writeStartArray();
+    int index = 0;
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      Node child = node.children.get(index++);
+      if (child != null && replace(parser, generator, child, null)) {
+        continue;
+      }
+      if (child != null) {
+        copy(parser, generator, child);
+      } else {
+        generator.copyCurrentStructure(parser);
+      }
+    }
+
+    for (Operation operation : node.operations) {
+      if (operation.type == Type.ADD) {
+        generator.writeObject(operation.value);
+        operation.applied = true;
+      }
+    }
+    generator.writeEndArray();
+  }
+
+  // Sets or removes the value at the current token; false when the value has to be copied
+  private boolean replace(JsonParser parser, JsonGenerator generator, Node node, String name) throws IOException {
+    for (Operation operation : node.operations) {
+      if (operation.type == Type.ADD) {
+        return false;
+      }
+      node.reachedAs = parser.getCurrentToken();
+      parser.skipChildren();
+      if (operation.type == Type.SET) {
+        if (name != null) {
+          generator.writeFieldName(name);
+        }
+        generator.writeObject(operation.value);
+      }
+      operation.applied = true;
+    }
+    return !node.operations.isEmpty();
+  }
+
+  // Reports the operations the document had no place for, as JsonPath would
+  private static void checkUnapplied(Node root, Operation operation) {
+    Node parent = root;
+    for (Object segment : operation.segments.subList(0, operation.segments.size() - 1)) {
+      parent = parent.children.get(segment);
+    }
+    Node node = parent.children.get(operation.segments.get(operation.segments.size() - 1));
+
+    if (operation.type == Type.ADD) {
+      if (node.reachedAs == null) {
+        throw new PathNotFoundException("No results for path: " + operation.path);
+      }
+      throw new InvalidModificationException("Can only add to an array");
+    }
+    boolean container = parent.reachedAs == JsonToken.START_OBJECT || parent.reachedAs == JsonToken.START_ARRAY;
+    if (operation.type == Type.REMOVE && container) {
+      return;
+    }
+    // Fields are only created in existing objects
+    if (operation.type == Type.SET && parent.reachedAs == JsonToken.VALUE_NULL) {
+      return;
+    }
+    throw new PathNotFoundException("No results for path: " + operation.path);
+  }
+
+  private void applyToTree(Path source, Path temp) throws IOException {
+    JsonNode tree = mapper.readTree(source.toFile());
+    DocumentContext docContext = JsonPath.using(configuration).parse(tree);
+
+    for (Operation operation : operations) {
+      switch (operation.type) {
+        case SET:
+          set(docContext, operation.path, operation.value);
+          break;
+        case ADD:
+          docContext.add(operation.path, operation.value);
+          break;
+        case REMOVE:
+          docContext.delete(operation.path);
+          break;
+        default:
+          break;
+      }
+    }
+
+    mapper.writer(new DefaultPrettyPrinter()).writeValue(temp.toFile(), tree);
+  }
+
+  private static void set(DocumentContext docContext, String key, Object value) {
+    try {
+      docContext.read(key);
+      // Update if found
+      docContext.set(key, value);
+    } catch (PathNotFoundException e) {
+      // Create if parent exists
+      String parentNodeJsonPath = key.substring(0, key.lastIndexOf('['));
+      if (docContext.read(parentNodeJsonPath) != null) {
+        String parentNodeName = key.substring(key.lastIndexOf('[') + 2, key.lastIndexOf(']') - 1);
+
+        docContext.put(parentNodeJsonPath, parentNodeName, value);
+      }
+    }
+  }
+
+  private static class Operation {
+
+    private final Type type;
+    private final String path;
+    private final Object value;
+    private List<Object> segments;
+    private boolean applied = false;
+
+    private Operation(Type type, String path, Object value) {
+      this.type = type;
+      this.path = path;
+      this.value = value;
+    }
+  }
+
+  // Path segment (field name or array index) -> operations on the value and on the values below it
+  private static class Node {
+
+    private final Map<Object, Node> children = new LinkedHashMap<>();
+    private final List<Operation> operations = new ArrayList<>();
+    private JsonToken reachedAs;
+  }
+}
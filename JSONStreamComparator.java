@@ -0,0 +1,472 @@
+/*
+ * Copyright (c) Experian, 2020. All rights reserved.
+ */
+package com.experian.automation.helpers;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+import org.skyscreamer.jsonassert.JSONCompareMode;
+
+/**
+ * Token level comparison of two JSON documents, for golden files too large to be compared as object trees.
+ * <p>
+ * Both documents are read with Jackson streaming parsers. Objects whose fields come in the same order and arrays
+ * compared in strict order are walked token by token, so memory does not grow with the document size. Only the fields
+ * found out of order and the arrays compared in any order are read as trees.
+ * <p>
+ * The compare modes have the JSONAssert meaning: extensible modes accept additional fields in the actual document,
+ * strict order modes require the array elements in the same order. Paths use the JSONAssert notation (e.g.
+ * data.items[0].id) where * matches one level and ** any number of levels; a leading $. is ignored.
+ * <p>
+ * Example: new JSONStreamComparator(JSONCompareMode.STRICT).excluding("**.timestamp").compare(golden, result)
+ */
+public class JSONStreamComparator {
+
+  private static final int DEFAULT_MAX_DIFFERENCES = 50;
+  private static final int MAX_VALUE_LENGTH = 100;
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private final boolean extensible;
+  private final boolean strictOrder;
+
+  // Path pattern -> regular expression the actual value has to match
+  private final Map<Pattern, Pattern> customizations = new LinkedHashMap<>();
+  private final List<Pattern> exclusions = new ArrayList<>();
+
+  private int maxDifferences = DEFAULT_MAX_DIFFERENCES;
+  private UnaryOperator<String> expectedTransformer = UnaryOperator.identity();
+
+  /**
+   * Instantiates a new JSON stream comparator.
+   *
+   * @param compareMode the compare mode (STRICT, LENIENT, NON_EXTENSIBLE or STRICT_ORDER)
+   */
+  public JSONStreamComparator(JSONCompareMode compareMode) {
+    this.extensible = compareMode.isExtensible();
+    this.strictOrder = compareMode.hasStrictOrder();
+  }
+
+  /**
+   * Compares the values at a path with a regular expression instead of the expected value.
+   *
+   * @param path  the path of the values
+   * @param regex the regular expression the whole actual value has to match; objects and arrays are matched in
+   *              their compact JSON form
+   * @return the JSON stream comparator
+   */
+// Builder method to add a regex customization
+  public JSONStreamComparator withCustomization(String path, String regex) {
+    customizations.put(toPathPattern(path), Pattern.compile(regex));
+    return this;
+  }
+
+  /**
+   * Leaves the values at a path out of the comparison, whether or not they are present.
+   *
+   * @param path the path of the values
+   * @return the JSON stream comparator
+   */
+// Builder method to add an excluded path
+  public JSONStreamComparator excluding(String path) {
+    exclusions.add(toPathPattern(path));
+    return this;
+  }
+
+  /**
+   * Sets the number of differences after which the comparison stops.
+   *
+   * @param maxDifferences the maximal number of reported differences
+   * @return the JSON stream comparator
+   */
+// Builder method to set the difference limit
+  public JSONStreamComparator maxDifferences(int maxDifferences) {
+    this.maxDifferences = maxDifferences;
+    return this;
+  }
+
+  /**
+   * Transforms the expected string values before they are compared, e.g. to resolve variables in a golden file.
+   *
+   * @param transformer the transformation of the expected string values
+   * @return the JSON stream comparator
+   */
+// Builder method to set the expected value transformation
+  public JSONStreamComparator transformExpectedValues(UnaryOperator<String> transformer) {
+    this.expectedTransformer = transformer;
+    return this;
+  }
+
+  /**
+   * Compares two JSON files.
+   *
+   * @param expectedFile the expected (golden) file
+   * @param actualFile   the actual file
+   * @return the differences with their paths, at most the configured limit; empty if the documents match
+   * @throws IOException the io exception
+   */
+  public List<String> compare(File expectedFile, File actualFile) throws IOException {
+    try (JsonParser expected = mapper.getFactory().createParser(expectedFile);
+        JsonParser actual = mapper.getFactory().createParser(actualFile)) {
+      return compare(expected, actual);
+    }
+  }
+
+  /**
+   * Compares two JSON strings.
+   *
+   * @param expectedJson the expected JSON
+   * @param actualJson   the actual JSON
+   * @return the differences with their paths, at most the configured limit; empty if the documents match
+   * @throws IOException the io exception
+   */
+  public List<String> compare(String expectedJson, String actualJson) throws IOException {
+    try (JsonParser expected = mapper.getFactory().createParser(expectedJson);
+        JsonParser actual = mapper.getFactory().createParser(actualJson)) {
+      return compare(expected, actual);
+    }
+  }
+
+  private List<String> compare(JsonParser expected, JsonParser actual) throws IOException {
+    Differences differences = new Differences(maxDifferences);
+    try {
+      expected.nextToken();
+      actual.nextToken();
+      compareStreams(expected, actual, "", differences);
+    } catch (DifferenceLimitException e) {
+      differences.list.add("Comparison stopped at the limit of " + maxDifferences + " differences");
+    }
+    return differences.list;
+  }
+
+  private void compareStreams(JsonParser expected, JsonParser actual, String path, Differences differences)
+      throws IOException {
+
+    if (isExcluded(path)) {
+      expected.skipChildren();
+      actual.skipChildren();
+      return;
+    }
+
+    JsonToken expectedToken = expected.getCurrentToken();
+    JsonToken actualToken = actual.getCurrentToken();
+
+    boolean customized = customization(path) != null;
+    if (!customized && expectedToken == actualToken) {
+      if (expectedToken == JsonToken.START_OBJECT) {
+        compareObjectStreams(expected, actual, path, differences);
+        return;
+      }
+      if (expectedToken == JsonToken.START_ARRAY && strictOrder) {
+        compareArrayStreams(expected, actual, path, differences);
+        return;
+      }
+    }
+
+    if (!customized && expectedToken.isStructStart() && actualToken.isStructStart() && expectedToken != actualToken) {
+      expected.skipChildren();
+      actual.skipChildren();
+      differences.add(path, expectedToken == JsonToken.START_OBJECT ? "an object" : "an array",
+                      actualToken == JsonToken.START_OBJECT ? "an object" : "an array");
+      return;
+    }
+
+    compareTrees(readTree(expected), readTree(actual), path, differences);
+  }
+
+  private void compareObjectStreams(JsonParser expected, JsonParser actual, String path, Differences differences)
+      throws IOException {
+
+    // Fields read out of order, waiting for the same field in the other document
+    Map<String, JsonNode> pendingExpected = new LinkedHashMap<>();
+    Map<String, JsonNode> pendingActual = new LinkedHashMap<>();
+
+    JsonToken expectedToken = expected.nextToken();
+    JsonToken actualToken = actual.nextToken();
+
+    while (expectedToken != JsonToken.END_OBJECT || actualToken != JsonToken.END_OBJECT) {
+      if (expectedToken == JsonToken.FIELD_NAME && actualToken == JsonToken.FIELD_NAME
+          && expected.getCurrentName().equals(actual.getCurrentName())) {
+        String fieldPath = fieldPath(path, expected.getCurrentName());
+        expected.nextToken();
+        actual.nextToken();
+        compareStreams(expected, actual, fieldPath, differences);
+        expectedToken = expected.nextToken();
+        actualToken = actual.nextToken();
+        continue;
+      }
+
+      if (expectedToken == JsonToken.FIELD_NAME) {
+        String name = expected.getCurrentName();
+        expected.nextToken();
+        readPendingField(expected, name, path, pendingActual, pendingExpected, true, differences);
+        expectedToken = expected.nextToken();
+      }
+      if (actualToken == JsonToken.FIELD_NAME) {
+        String name = actual.getCurrentName();
+        actual.nextToken();
+        readPendingField(actual, name, path, pendingExpected, pendingActual, false, differences);
+        actualToken = actual.nextToken();
+      }
+    }
+
+    for (String name : pendingExpected.keySet()) {
+      differences.add(fieldPath(path, name), "Expected field is missing");
+    }
+    if (!extensible) {
+      for (String name : pendingActual.keySet()) {
+        differences.add(fieldPath(path, name), "Unexpected field");
+      }
+    }
+  }
+
+  private void readPendingField(JsonParser parser, String name, String path, Map<String, JsonNode> otherPending,
+      Map<String, JsonNode> pending, boolean isExpected, Differences differences) throws IOException {
+
+    String fieldPath = fieldPath(path, name);
+    if (isExcluded(fieldPath)) {
+      parser.skipChildren();
+      return;
+    }
+
+    JsonNode node = readTree(parser);
+    JsonNode otherNode = otherPending.remove(name);
+    if (otherNode == null) {
+      pending.put(name, node);
+    } else if (isExpected) {
+      compareTrees(node, otherNode, fieldPath, differences);
+    } else {
+      compareTrees(otherNode, node, fieldPath, differences);
+    }
+  }
+
+  private void compareArrayStreams(JsonParser expected, JsonParser actual, String path, Differences differences)
+      throws IOException {
+
+    int index = 0;
+    JsonToken expectedToken = expected.nextToken();
+    JsonToken actualToken = actual.nextToken();
+
+    while (expectedToken != JsonToken.END_ARRAY && actualToken != JsonToken.END_ARRAY) {
+      compareStreams(expected, actual, elementPath(path, index++), differences);
+      expectedToken = expected.nextToken();
+      actualToken = actual.nextToken();
+    }
+
+    if (expectedToken != actualToken) {
+      int expectedSize = expectedToken == JsonToken.END_ARRAY ? index : index + skipRemaining(expected);
+      int actualSize = actualToken == JsonToken.END_ARRAY ? index : index + skipRemaining(actual);
+      differences.add(path, "Expected " + expectedSize + " values but got " + actualSize);
+    }
+  }
+
+  // Skips the remaining elements of an array, the parser being on the first of them
+  private static int skipRemaining(JsonParser parser) throws IOException {
+    int count = 0;
+    while (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+      parser.skipChildren();
+      parser.nextToken();
+      count++;
+    }
+    return count;
+  }
+
+  private void compareTrees(JsonNode expected, JsonNode actual, String path, Differences differences) {
+    if (isExcluded(path)) {
+      return;
+    }
+
+    Pattern customization = customization(path);
+    if (customization != null) {
+      if (!customization.matcher(asText(actual)).matches()) {
+        differences.add(path, "matching " + customization.pattern(), toString(actual));
+      }
+      return;
+    }
+
+    if (expected.isObject() && actual.isObject()) {
+      compareObjectTrees(expected, actual, path, differences);
+    } else if (expected.isArray() && actual.isArray()) {
+      if (expected.size() != actual.size()) {
+        differences.add(path, "Expected " + expected.size() + " values but got " + actual.size());
+      } else if (strictOrder) {
+        for (int i = 0; i < expected.size(); i++) {
+          compareTrees(expected.get(i), actual.get(i), elementPath(path, i), differences);
+        }
+      } else {
+        compareUnorderedArrays(expected, actual, path, differences);
+      }
+    } else if (!valuesEqual(expected, actual)) {
+      differences.add(path, toString(expected), toString(actual));
+    }
+  }
+
+  private void compareObjectTrees(JsonNode expected, JsonNode actual, String path, Differences differences) {
+    Iterator<Map.Entry<String, JsonNode>> fields = expected.fields();
+    while (fields.hasNext()) {
+      Map.Entry<String, JsonNode> field = fields.next();
+      String fieldPath = fieldPath(path, field.getKey());
+      JsonNode actualField = actual.get(field.getKey());
+      if (actualField != null) {
+        compareTrees(field.getValue(), actualField, fieldPath, differences);
+      } else if (!isExcluded(fieldPath)) {
+        differences.add(fieldPath, "Expected field is missing");
+      }
+    }
+
+    if (!extensible) {
+      Iterator<String> names = actual.fieldNames();
+      while (names.hasNext()) {
+        String name = names.next();
+        if (!expected.has(name) && !isExcluded(fieldPath(path, name))) {
+          differences.add(fieldPath(path, name), "Unexpected field");
+        }
+      }
+    }
+  }
+
+  private void compareUnorderedArrays(JsonNode expected, JsonNode actual, String path, Differences differences) {
+    // Matched elements are removed, so elements in the same order are found at the first position tried
+    List<JsonNode> remaining = new LinkedList<>();
+    actual.forEach(remaining::add);
+
+    for (int i = 0; i < expected.size(); i++) {
+      String elementPath = elementPath(path, i);
+      if (isExcluded(elementPath)) {
+        continue;
+      }
+
+      boolean found = false;
+      Iterator<JsonNode> candidates = remaining.iterator();
+      while (candidates.hasNext() && !found) {
+        if (matches(expected.get(i), candidates.next(), elementPath)) {
+          candidates.remove();
+          found = true;
+        }
+      }
+
+      if (!found) {
+        differences.add(elementPath, "Expected element " + toString(expected.get(i)) + " not found in actual array");
+      }
+    }
+  }
+
+  private boolean matches(JsonNode expected, JsonNode actual, String path) {
+    try {
+      compareTrees(expected, actual, path, new Differences(1));
+      return true;
+    } catch (DifferenceLimitException e) {
+      return false;
+    }
+  }
+
+  private boolean valuesEqual(JsonNode expected, JsonNode actual) {
+    if (expected.isNumber() && actual.isNumber()) {
+      return expected.decimalValue().compareTo(actual.decimalValue()) == 0;
+    }
+    if (expected.isTextual() && actual.isTextual()) {
+      return expectedTransformer.apply(expected.textValue()).equals(actual.textValue());
+    }
+    return expected.equals(actual);
+  }
+
+  private JsonNode readTree(JsonParser parser) throws IOException {
+    JsonNode node = parser.readValueAsTree();
+    return node == null ? mapper.nullNode() : node;
+  }
+
+  private boolean isExcluded(String path) {
+    for (Pattern exclusion : exclusions) {
+      if (exclusion.matcher(path).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Pattern customization(String path) {
+    for (Map.Entry<Pattern, Pattern> customization : customizations.entrySet()) {
+      if (customization.getKey().matcher(path).matches()) {
+        return customization.getValue();
+      }
+    }
+    return null;
+  }
+
+  // Same wildcards as the JSONAssert customization paths
+  private static Pattern toPathPattern(String path) {
+    String normalized = path.replaceFirst("^\\$\\.?", "").replace(".[", "[");
+    StringBuilder regex = new StringBuilder();
+    String[] levels = normalized.split("\\*\\*\\.", -1);
+    for (int i = 0; i < levels.length; i++) {
+      if (i > 0) {
+        regex.append("(?:.+\\.)?");
+      }
+      String[] segments = levels[i].split("\\*", -1);
+      for (int j = 0; j < segments.length; j++) {
+        if (j > 0) {
+          regex.append("[^\\.]+");
+        }
+        regex.append(Pattern.quote(segments[j]));
+      }
+    }
+    return Pattern.compile(regex.toString());
+  }
+
+  private static String fieldPath(String path, String name) {
+    return path.isEmpty() ? name : path + "." + name;
+  }
+
+  private static String elementPath(String path, int index) {
+    return path + "[" + index + "]";
+  }
+
+  private static String asText(JsonNode node) {
+    return node.isContainerNode() ? node.toString() : node.asText();
+  }
+
+  private static String toString(JsonNode node) {
+    String text = node.toString();
+    return text.length() > MAX_VALUE_LENGTH ? text.substring(0, MAX_VALUE_LENGTH) + "..." : text;
+  }
+
+  private static class Differences {
+
+    private final int limit;
+    private final List<String> list = new ArrayList<>();
+
+    private Differences(int limit) {
+      this.limit = limit;
+    }
+
+    private void add(String path, String expected, String actual) {
+      add(path, "Expected " + expected + " but found " + actual);
+    }
+
+    private void add(String path, String message) {
+      list.add((path.isEmpty() ? "$" : path) + ": " + message);
+      if (list.size() >= limit) {
+        throw new DifferenceLimitException();
+      }
+    }
+  }
+
+  private static class DifferenceLimitException extends RuntimeException {
+
+    private DifferenceLimitException() {
+      super(null, null, false, false);
+    }
+  }
+}
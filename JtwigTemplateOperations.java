@@ -3,19 +3,37 @@
  */
 package com.experian.automation.helpers;
 
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Map;
 import org.apache.commons.io.IOUtils;
 import org.jtwig.JtwigModel;
 import org.jtwig.JtwigTemplate;
+import org.jtwig.environment.EnvironmentConfiguration;
+import org.jtwig.environment.EnvironmentConfigurationBuilder;
 
 /**
  * The type Jtwig template operations.
+ * <p>
+ * Compiled templates are shared between renders and threads. Template files are cached by FixtureCache, so an
+ * edited file is compiled again; templates packaged in jars are cached by resource URL.
  */
 public class JtwigTemplateOperations {
 
+  private static final int RESOURCE_CACHE_SIZE = 64;
+  private static final String TEMPLATE_KIND = "jtwig:";
+
+  // Templates read from jars by resource URL and encoding
+  private static final Map<String, JtwigTemplate> resourceTemplates = LRUCache.synchronizedOf(RESOURCE_CACHE_SIZE);
+
   /**
    * Instantiates a new Jtwig template operations.
    */
@@ -23,23 +41,60 @@ public class JtwigTemplateOperations {
     //Blank Constructor
   }
 
-  private String renderTemplate(String templateFilePath, Map<String, Object> modelMap, String encoding,
-      Boolean classPathTemplate) throws Throwable {
-    InputStream inputStream;
+  private JtwigTemplate template(String templateFilePath, String encoding, Boolean classPathTemplate)
+      throws IOException {
+    if (!classPathTemplate) {
+      return fileTemplate(templateFilePath, encoding);
+    }
 
-    if (classPathTemplate) {
-      inputStream = this.getClass().getClassLoader().getResourceAsStream(
-          templateFilePath);
-    } else {
-      inputStream = new FileInputStream(new File(templateFilePath));
+    URL resource = this.getClass().getClassLoader().getResource(templateFilePath);
+    if (resource == null) {
+      throw new IOException("Template resource not found: " + templateFilePath);
+    }
+    if ("file".equals(resource.getProtocol())) {
+      try {
+        return fileTemplate(Paths.get(resource.toURI()).toString(), encoding);
+      } catch (URISyntaxException e) {
+        throw new IOException(e);
+      }
     }
 
-    String jtwigInline = IOUtils.toString(inputStream, encoding);
-    JtwigTemplate template = JtwigTemplate.inlineTemplate(jtwigInline);
+    String key = resource + "#" + encoding;
+    JtwigTemplate template = resourceTemplates.get(key);
+    if (template == null) {
+      try (InputStream inputStream = resource.openStream()) {
+        template = compile(IOUtils.toString(inputStream, encoding), encoding);
+      }
+      resourceTemplates.put(key, template);
+    }
+    return template;
+  }
+
+  private static JtwigTemplate fileTemplate(String templateFilePath, String encoding) throws IOException {
+    return FixtureCache.parsed(templateFilePath, TEMPLATE_KIND + encoding,
+        content -> compile(new String(content, encoding), encoding));
+  }
+
+  // Streamed output is written in the encoding of the template
+  private static JtwigTemplate compile(String jtwigInline, String encoding) {
+    EnvironmentConfiguration configuration = EnvironmentConfigurationBuilder.configuration()
+        .render().withOutputCharset(Charset.forName(encoding)).and()
+        .build();
+    return JtwigTemplate.inlineTemplate(jtwigInline, configuration);
+  }
 
+  private String renderTemplate(String templateFilePath, Map<String, Object> modelMap, String encoding,
+      Boolean classPathTemplate) throws Throwable {
     JtwigModel model = JtwigModel.newModel(modelMap);
 
-    return template.render(model);
+    return template(templateFilePath, encoding, classPathTemplate).render(model);
+  }
+
+  private void renderTemplate(String templateFilePath, Map<String, Object> modelMap, String encoding,
+      Boolean classPathTemplate, OutputStream output) throws Throwable {
+    JtwigModel model = JtwigModel.newModel(modelMap);
+
+    template(templateFilePath, encoding, classPathTemplate).render(model, output);
   }
 
   /**
@@ -69,4 +124,50 @@ public class JtwigTemplateOperations {
       throws Throwable {
     return renderTemplate(templateFilePath, modelMap, encoding, false);
   }
+
+  /**
+   * Render resource file template to a stream, which is left open.
+   *
+   * @param templateFilePath the template file path
+   * @param modelMap         the model map
+   * @param encoding         the encoding of the template and of the output
+   * @param output           the output stream
+   * @throws Throwable the throwable
+   */
+  public void renderResourceFileTemplate(String templateFilePath, Map<String, Object> modelMap, String encoding,
+      OutputStream output) throws Throwable {
+    renderTemplate(templateFilePath, modelMap, encoding, true, output);
+  }
+
+  /**
+   * Render custom file template to a stream, which is left open.
+   *
+   * @param templateFilePath the template file path
+   * @param modelMap         the model map
+   * @param encoding         the encoding of the template and of the output
+   * @param output           the output stream
+   * @throws Throwable the throwable
+   */
+  public void renderCustomFileTemplate(String templateFilePath, Map<String, Object> modelMap, String encoding,
+      OutputStream output) throws Throwable {
+    renderTemplate(templateFilePath, modelMap, encoding, false, output);
+  }
+
+  /**
+   * Render custom file template to a file.
+   *
+   * @param templateFilePath the template file path
+   * @param modelMap         the model map
+   * @param encoding         the encoding of the template and of the output
+   * @param outputFilePath   the output file path
+   * @throws Throwable the throwable
+   */
+  public void renderCustomFileTemplateToFile(String templateFilePath, Map<String, Object> modelMap, String encoding,
+      String outputFilePath) throws Throwable {
+    Path outputFile = Paths.get(outputFilePath).toAbsolutePath();
+    Files.createDirectories(outputFile.getParent());
+    try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(outputFile))) {
+      renderTemplate(templateFilePath, modelMap, encoding, false, output);
+    }
+  }
 }
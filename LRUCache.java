@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) Experian, 2020. All rights reserved.
+ */
+package com.experian.automation.helpers;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Map bounded to a maximum number of entries, evicting the least recently used entry once full. Used for the caches
+ * of compiled schemas, templates, paths and indexes.
+ * <p>
+ * The map itself is not thread safe; {@link #synchronizedOf(int)} gives a thread safe one for caches shared by all
+ * threads.
+ * <p>
+ * Example: Map&lt;String, Schema&gt; schemas = LRUCache.synchronizedOf(32)
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the cached values
+ */
+public class LRUCache<K, V> extends LinkedHashMap<K, V> {
+
+  private static final long serialVersionUID = 1L;
+
+  private final int maxSize;
+
+  /**
+   * Instantiates a new LRU cache.
+   *
+   * @param maxSize the maximum number of entries
+   */
+  public LRUCache(int maxSize) {
+    super(16, 0.75f, true);
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Creates a thread safe LRU cache.
+   *
+   * @param <K>     the type of the keys
+   * @param <V>     the type of the cached values
+   * @param maxSize the maximum number of entries
+   * @return the synchronized cache
+   */
+  public static <K, V> Map<K, V> synchronizedOf(int maxSize) {
+    return Collections.synchronizedMap(new LRUCache<>(maxSize));
+  }
+
+  @Override
+  protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+    return size() > maxSize;
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) Experian, 2020. All rights reserved.
+ */
+package com.experian.automation.helpers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe histogram of latencies in microseconds, with a relative precision of 0.1%.
+ * <p>
+ * Values below 2048 microseconds have their own bucket. Larger values share buckets whose width doubles with each
+ * power of two, 1024 buckets per power of two, so the memory used does not depend on the number of values recorded.
+ * Values above about 25 days are recorded as 25 days.
+ * <p>
+ * Example: histogram.record(System.nanoTime() - start, TimeUnit.NANOSECONDS); histogram.percentile(99)
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 10;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+  private static final int MAX_SHIFT = 30;
+  private static final long MAX_VALUE = (1L << (MAX_SHIFT + SUB_BUCKET_BITS + 1)) - 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(LINEAR_BUCKETS + MAX_SHIFT * SUB_BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records a latency.
+   *
+   * @param latency the latency
+   * @param unit    the unit of the latency
+   */
+  public void record(long latency, TimeUnit unit) {
+    record(unit.toMicros(latency));
+  }
+
+  /**
+   * Records a latency in microseconds.
+   *
+   * @param micros the latency in microseconds
+   */
+  public void record(long micros) {
+    long value = Math.min(Math.max(micros, 0L), MAX_VALUE);
+    counts.incrementAndGet(index(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    min.accumulateAndGet(value, Math::min);
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  /**
+   * Gets the number of recorded latencies.
+   *
+   * @return the count
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Gets the smallest recorded latency.
+   *
+   * @return the latency in microseconds, 0 when nothing was recorded
+   */
+  public long getMin() {
+    return count.get() == 0 ? 0L : min.get();
+  }
+
+  /**
+   * Gets the largest recorded latency.
+   *
+   * @return the latency in microseconds
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Gets the mean of the recorded latencies.
+   *
+   * @return the mean in microseconds
+   */
+  public double getMean() {
+    long recorded = count.get();
+    return recorded == 0 ? 0.0 : (double) sum.get() / recorded;
+  }
+
+  /**
+   * Gets the latency under which a percentage of the recorded latencies fall.
+   *
+   * @param percentile the percentage (e.g. 99.9)
+   * @return the latency in microseconds, rounded up to the end of its bucket
+   */
+  public long percentile(double percentile) {
+    long recorded = count.get();
+    if (recorded == 0) {
+      return 0L;
+    }
+    long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * recorded));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestValue(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  private static int index(long value) {
+    if (value < LINEAR_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) ((value >> shift) - SUB_BUCKETS);
+  }
+
+  private static long highestValue(int index) {
+    if (index < LINEAR_BUCKETS) {
+      return index;
+    }
+    int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+    long subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
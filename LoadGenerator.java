@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) Experian, 2020. All rights reserved.
+ */
+package com.experian.automation.helpers;
+
+import com.experian.automation.logger.Logger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends a number of requests from several threads and measures their latency.
+ * <p>
+ * Each worker thread sends requests until the requested number is reached. With a ramp-up time the workers start one
+ * after the other over that time; with a target rate the requests are spread evenly in time, whatever the number of
+ * workers. Warm-up requests are sent first and are not measured. A request fails when it throws an exception or
+ * returns another status code than the expected one.
+ * <p>
+ * Example: new LoadGenerator(1000).concurrency(20).warmUp(50).run(() -> send(), 200).percentile(95)
+ */
+public class LoadGenerator {
+
+  private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+  private final Logger logger = Logger.getLogger(this.getClass());
+
+  private final int requests;
+  private int concurrency = 1;
+  private double rate = 0.0;
+  private int warmUp = 0;
+  private long rampUpMillis = 0L;
+
+  /**
+   * Sends one request.
+   */
+  @FunctionalInterface
+  public interface Request {
+
+    /**
+     * Sends the request and waits for the response.
+     *
+     * @return the response status code
+     * @throws Exception the exception
+     */
+    int send() throws Exception;
+  }
+
+  /**
+   * Instantiates a new load generator.
+   *
+   * @param requests the number of measured requests
+   */
+  public LoadGenerator(int requests) {
+    this.requests = requests;
+  }
+
+  /**
+   * Sets the number of requests sent at the same time (1 by default).
+   *
+   * @param concurrency the number of worker threads
+   * @return the load generator
+   */
+// Builder method to set the concurrency
+  public LoadGenerator concurrency(int concurrency) {
+    this.concurrency = Math.max(1, concurrency);
+    return this;
+  }
+
+  /**
+   * Sets the target rate; 0 (the default) sends the requests as fast as the workers can. With a target rate the
+   * latency of a request is measured from its scheduled send time, so the time a request waits because the service
+   * fell behind the schedule is included instead of hidden.
+   *
+   * @param requestsPerSecond the requests per second for all the workers together
+   * @return the load generator
+   */
+// Builder method to set the target rate
+  public LoadGenerator rate(double requestsPerSecond) {
+    this.rate = Math.max(0.0, requestsPerSecond);
+    return this;
+  }
+
+  /**
+   * Sets the number of requests sent before the measured ones.
+   *
+   * @param warmUp the number of warm-up requests
+   * @return the load generator
+   */
+// Builder method to set the warm-up requests
+  public LoadGenerator warmUp(int warmUp) {
+    this.warmUp = Math.max(0, warmUp);
+    return this;
+  }
+
+  /**
+   * Sets the time over which the workers are started.
+   *
+   * @param rampUpMillis the ramp-up time in milliseconds
+   * @return the load generator
+   */
+// Builder method to set the ramp-up time
+  public LoadGenerator rampUp(long rampUpMillis) {
+    this.rampUpMillis = Math.max(0L, rampUpMillis);
+    return this;
+  }
+
+  /**
+   * Sends the warm-up and the measured requests.
+   *
+   * @param request            the request
+   * @param expectedStatusCode the expected status code
+   * @return the result of the measured requests
+   * @throws InterruptedException the interrupted exception
+   */
+  public Result run(Request request, int expectedStatusCode) throws InterruptedException {
+    AtomicInteger threadNumber = new AtomicInteger();
+    ExecutorService workers = Executors.newFixedThreadPool(concurrency, runnable -> {
+      Thread thread = new Thread(runnable, "load-generator-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    try {
+      if (warmUp > 0) {
+        logger.info(String.format("Sending %s warm-up requests", warmUp));
+        send(workers, request, expectedStatusCode, warmUp, 0L, 0.0, new Result());
+      }
+
+      logger.info(String.format("Sending %s requests with %s workers", requests, concurrency));
+      Result result = new Result();
+      long start = System.nanoTime();
+      send(workers, request, expectedStatusCode, requests, rampUpMillis, rate, result);
+      result.durationNanos = System.nanoTime() - start;
+
+      logger.info(result.toString());
+      return result;
+    } finally {
+      workers.shutdownNow();
+    }
+  }
+
+  private void send(ExecutorService workers, Request request, int expectedStatusCode, int count, long rampUp,
+      double targetRate, Result result) throws InterruptedException {
+    AtomicInteger next = new AtomicInteger();
+    long start = System.nanoTime();
+    List<Future<?>> running = new ArrayList<>();
+
+    for (int worker = 0; worker < concurrency; worker++) {
+      long workerStart = start + TimeUnit.MILLISECONDS.toNanos(rampUp) * worker / concurrency;
+      running.add(workers.submit(() -> {
+        sleepUntil(workerStart);
+        int index;
+        while ((index = next.getAndIncrement()) < count) {
+          long sent;
+          if (targetRate > 0) {
+            sent = start + (long) (index * NANOS_PER_SECOND / targetRate);
+            sleepUntil(sent);
+          } else {
+            sent = System.nanoTime();
+          }
+          try {
+            int statusCode = request.send();
+            if (statusCode != expectedStatusCode) {
+              result.fail("Unexpected status code " + statusCode);
+            }
+          } catch (Exception e) {
+            result.fail(e.toString());
+          }
+          result.histogram.record(System.nanoTime() - sent, TimeUnit.NANOSECONDS);
+        }
+        return null;
+      }));
+    }
+
+    for (Future<?> worker : running) {
+      try {
+        worker.get();
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+  }
+
+  private static void sleepUntil(long nanoTime) throws InterruptedException {
+    long delay = nanoTime - System.nanoTime();
+    if (delay > 0) {
+      TimeUnit.NANOSECONDS.sleep(delay);
+    }
+  }
+
+  /**
+   * The measured requests: latency histogram, error count and duration.
+   */
+  public static class Result {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicReference<String> firstError = new AtomicReference<>();
+    private long durationNanos;
+
+    private void fail(String error) {
+      errors.incrementAndGet();
+      firstError.compareAndSet(null, error);
+    }
+
+    /**
+     * Gets the latency histogram.
+     *
+     * @return the histogram, in microseconds
+     */
+    public LatencyHistogram getHistogram() {
+      return histogram;
+    }
+
+    /**
+     * Gets the number of sent requests.
+     *
+     * @return the number of requests
+     */
+    public long getRequests() {
+      return histogram.getCount();
+    }
+
+    /**
+     * Gets the number of failed requests.
+     *
+     * @return the number of errors
+     */
+    public long getErrors() {
+      return errors.get();
+    }
+
+    /**
+     * Gets the error of the first failed request.
+     *
+     * @return the error, or null when no request failed
+     */
+    public String getFirstError() {
+      return firstError.get();
+    }
+
+    /**
+     * Gets the time taken by the requests.
+     *
+     * @return the duration in milliseconds
+     */
+    public double getDurationMillis() {
+      return durationNanos / 1_000_000.0;
+    }
+
+    /**
+     * Gets the throughput.
+     *
+     * @return the requests per second
+     */
+    public double getThroughput() {
+      return durationNanos == 0 ? 0.0 : getRequests() * NANOS_PER_SECOND / durationNanos;
+    }
+
+    /**
+     * Gets the latency under which a percentage of the requests completed.
+     *
+     * @param percentile the percentage (e.g. 95)
+     * @return the latency in milliseconds
+     */
+    public double percentile(double percentile) {
+      return histogram.percentile(percentile) / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT,
+          "Requests: %d, errors: %d, duration: %.0f ms, throughput: %.2f req/s, latency ms - min: %.3f, "
+              + "mean: %.3f, p50: %.3f, p95: %.3f, p99: %.3f, max: %.3f",
+          getRequests(), getErrors(), getDurationMillis(), getThroughput(), histogram.getMin() / 1000.0,
+          histogram.getMean() / 1000.0, percentile(50), percentile(95), percentile(99),
+          histogram.getMax() / 1000.0);
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) Experian, 2020. All rights reserved.
+ */
+package com.experian.automation.helpers;
+
+import com.experian.automation.logger.Logger;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+/**
+ * Page by page comparison of two PDF documents (text and images).
+ * <p>
+ * Documents are opened with temp file backed buffers so large statements do not have to fit in the heap. Pages are
+ * split into ranges compared in parallel, each worker opening its own copy of the documents as PDFBox documents are
+ * not thread safe. Images are reduced to pixel hashes page by page and the comparison stops at the first differing
+ * page.
+ * <p>
+ * Example: new PDFComparator("C:/Temp/actual.pdf", "C:/Temp/expected.pdf").compare()
+ */
+public class PDFComparator {
+
+  private static final int MIN_PAGES_PER_WORKER = 8;
+  private static final String IS_DIFFERENT_MESSAGE = " is different.";
+
+  private final Logger logger = Logger.getLogger(this.getClass());
+
+  private final File actualFile;
+  private final File expectedFile;
+
+  /**
+   * Instantiates a new PDF comparator.
+   *
+   * @param actualFile   The full path to the actual PDF (e.g C:/Temp/actual.pdf)
+   * @param expectedFile The full path to the expected PDF (e.g C:/Temp/expected.pdf)
+   */
+  public PDFComparator(String actualFile, String expectedFile) {
+    this.actualFile = new File(actualFile);
+    this.expectedFile = new File(expectedFile);
+  }
+
+  /**
+   * Compares the documents.
+   *
+   * @return the first difference found (page count, or text or image of the first differing page), null if the
+   * documents have the same content
+   * @throws IOException the io exception
+   */
+  public String compare() throws IOException {
+    int pageCount;
+    try (PDDocument actualPDF = load(actualFile); PDDocument expectedPDF = load(expectedFile)) {
+      pageCount = actualPDF.getNumberOfPages();
+      if (pageCount != expectedPDF.getNumberOfPages()) {
+        return String.format("PDF number of pages is different. Expected %s but found %s",
+                             expectedPDF.getNumberOfPages(), pageCount);
+      }
+      if (pageCount <= MIN_PAGES_PER_WORKER) {
+        PageDifference difference = comparePages(actualPDF, expectedPDF, 1, pageCount,
+                                                 new AtomicInteger(Integer.MAX_VALUE));
+        return difference == null ? null : difference.message;
+      }
+    }
+
+    int workers = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), pageCount / MIN_PAGES_PER_WORKER));
+    int pagesPerWorker = (pageCount + workers - 1) / workers;
+    List<int[]> ranges = new ArrayList<>();
+    for (int first = 1; first <= pageCount; first += pagesPerWorker) {
+      ranges.add(new int[]{first, Math.min(pageCount, first + pagesPerWorker - 1)});
+    }
+
+    // Lowest differing page found so far; workers skip the pages after it
+    AtomicInteger firstDifferentPage = new AtomicInteger(Integer.MAX_VALUE);
+    AtomicReference<PageDifference> difference = new AtomicReference<>();
+
+    try {
+      ForkJoinPool.commonPool().submit(() -> ranges.parallelStream().forEach(range -> {
+        try (PDDocument actualPDF = load(actualFile); PDDocument expectedPDF = load(expectedFile)) {
+          PageDifference rangeDifference = comparePages(actualPDF, expectedPDF, range[0], range[1],
+                                                        firstDifferentPage);
+          if (rangeDifference != null) {
+            difference.accumulateAndGet(rangeDifference,
+                                        (first, second) -> first == null || second.page < first.page ? second : first);
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      })).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Comparison of " + actualFile + " was interrupted", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+      throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
+
+    return difference.get() == null ? null : difference.get().message;
+  }
+
+  private static PDDocument load(File file) throws IOException {
+    return PDDocument.load(file, MemoryUsageSetting.setupTempFileOnly());
+  }
+
+  private PageDifference comparePages(PDDocument actualPDF, PDDocument expectedPDF, int firstPage, int lastPage,
+      AtomicInteger firstDifferentPage) throws IOException {
+
+    PDFTextStripper stripper = new PDFTextStripper();
+    PDFImageExtractor actualImages = new PDFImageExtractor(false);
+    PDFImageExtractor expectedImages = new PDFImageExtractor(false);
+
+    for (int pageNumber = firstPage; pageNumber <= lastPage && pageNumber < firstDifferentPage.get(); pageNumber++) {
+      String difference = comparePage(actualPDF, expectedPDF, pageNumber, stripper, actualImages, expectedImages);
+      if (difference != null) {
+        firstDifferentPage.accumulateAndGet(pageNumber, Math::min);
+        logger.info(difference);
+        return new PageDifference(pageNumber, difference);
+      }
+    }
+    return null;
+  }
+
+  private static String comparePage(PDDocument actualPDF, PDDocument expectedPDF, int pageNumber,
+      PDFTextStripper stripper, PDFImageExtractor actualImages, PDFImageExtractor expectedImages) throws IOException {
+
+    stripper.setStartPage(pageNumber);
+    stripper.setEndPage(pageNumber);
+    String textDifference = textDifference(stripper.getText(actualPDF), stripper.getText(expectedPDF));
+    if (textDifference != null) {
+      return "PDF text on page " + pageNumber + IS_DIFFERENT_MESSAGE + " " + textDifference;
+    }
+
+    actualImages.clear();
+    expectedImages.clear();
+    actualImages.processPage(actualPDF.getPage(pageNumber - 1));
+    expectedImages.processPage(expectedPDF.getPage(pageNumber - 1));
+    List<PDFImageExtractor.ImageDigest> actualDigests = actualImages.getImageDigests();
+    List<PDFImageExtractor.ImageDigest> expectedDigests = expectedImages.getImageDigests();
+
+    if (actualDigests.size() != expectedDigests.size()) {
+      return String.format("PDF number of images on page %s%s Expected %s but found %s", pageNumber,
+                           IS_DIFFERENT_MESSAGE, expectedDigests.size(), actualDigests.size());
+    }
+    for (int i = 0; i < actualDigests.size(); i++) {
+      if (!Objects.equals(actualDigests.get(i).getHash(), expectedDigests.get(i).getHash())) {
+        return String.format("PDF image %s on page %s%s Region %s", i, pageNumber, IS_DIFFERENT_MESSAGE,
+                             toString(expectedDigests.get(i).getRegion()));
+      }
+    }
+    return null;
+  }
+
+  private static String textDifference(String actualText, String expectedText) {
+    if (actualText.equals(expectedText)) {
+      return null;
+    }
+
+    String[] actualLines = actualText.split("\\r?\\n", -1);
+    String[] expectedLines = expectedText.split("\\r?\\n", -1);
+    int line = 0;
+    while (line < actualLines.length && line < expectedLines.length && actualLines[line].equals(expectedLines[line])) {
+      line++;
+    }
+    return String.format("Line %s: expected [%s] but found [%s]", line + 1,
+                         line < expectedLines.length ? expectedLines[line] : "",
+                         line < actualLines.length ? actualLines[line] : "");
+  }
+
+  private static String toString(Rectangle2D region) {
+    return String.format("x=%.1f, y=%.1f, width=%.1f, height=%.1f", region.getX(), region.getY(), region.getWidth(),
+                         region.getHeight());
+  }
+
+  private static class PageDifference {
+
+    private final int page;
+    private final String message;
+
+    private PageDifference(int page, String message) {
+      this.page = page;
+      this.message = message;
+    }
+  }
+}
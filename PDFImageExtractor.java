@@ -4,13 +4,19 @@
 package com.experian.automation.helpers;
 
 import java.awt.Image;
+import java.awt.geom.Rectangle2D;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Base64;
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.graphics.PDXObject;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.contentstream.operator.Operator;
 import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.util.Matrix;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
@@ -18,15 +24,54 @@ import java.util.List;
 
 /**
  * The type PDFImage Extractor.
+ * <p>
+ * By default every image drawn on the processed pages is kept. When only digests are kept, each image is reduced to
+ * a SHA-256 hash of its ARGB pixels and the region it is drawn at, so memory does not grow with the number of images.
  */
 public class PDFImageExtractor extends PDFStreamEngine {
 
+  private final boolean keepImages;
+
   private List<Image> listImg = new ArrayList<>();
+  private List<ImageDigest> digests = new ArrayList<>();
+
+  /**
+   * Instantiates a new PDF image extractor keeping all images.
+   */
+  public PDFImageExtractor() {
+    this(true);
+  }
+
+  /**
+   * Instantiates a new PDF image extractor.
+   *
+   * @param keepImages false to keep only the image digests
+   */
+  public PDFImageExtractor(boolean keepImages) {
+    this.keepImages = keepImages;
+  }
 
   public List getAllImages() {
     return listImg;
   }
 
+  /**
+   * Gets the digests of the images drawn on the processed pages, in drawing order.
+   *
+   * @return the image digests, empty unless only digests are kept
+   */
+  public List<ImageDigest> getImageDigests() {
+    return digests;
+  }
+
+  /**
+   * Forgets the images and digests collected so far, e.g. before processing the next page.
+   */
+  public void clear() {
+    listImg = new ArrayList<>();
+    digests = new ArrayList<>();
+  }
+
   /**
    * @param operator The operation to perform.
    * @param operands The list of arguments.
@@ -42,12 +87,73 @@ public class PDFImageExtractor extends PDFStreamEngine {
       if (xobject instanceof PDImageXObject) {
         PDImageXObject image = (PDImageXObject) xobject;
         BufferedImage bImage = image.getImage();
-        listImg.add(bImage);
+        if (keepImages) {
+          listImg.add(bImage);
+        } else {
+          Matrix ctm = getGraphicsState().getCurrentTransformationMatrix();
+          digests.add(new ImageDigest(digest(bImage), new Rectangle2D.Float(
+              ctm.getTranslateX(), ctm.getTranslateY(), ctm.getScalingFactorX(), ctm.getScalingFactorY())));
+        }
       }
     } else {
       super.processOperator(operator, operands);
     }
   }
 
-}
+  private static String digest(BufferedImage image) throws IOException {
+    MessageDigest messageDigest;
+    try {
+      messageDigest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+
+    int width = image.getWidth();
+    ByteBuffer row = ByteBuffer.allocate(width * Integer.BYTES);
+    int[] pixels = new int[width];
+    messageDigest.update(ByteBuffer.allocate(2 * Integer.BYTES).putInt(width).putInt(image.getHeight()).array());
+
+    // Hashed row by row so only one row of pixels is converted at a time
+    for (int y = 0; y < image.getHeight(); y++) {
+      image.getRGB(0, y, width, 1, pixels, 0, width);
+      row.clear();
+      row.asIntBuffer().put(pixels);
+      messageDigest.update(row.array());
+    }
+
+    return Base64.getEncoder().encodeToString(messageDigest.digest());
+  }
+
+  /**
+   * The pixel hash of an image and the page region it is drawn at.
+   */
+  public static class ImageDigest {
 
+    private final String hash;
+    private final Rectangle2D region;
+
+    private ImageDigest(String hash, Rectangle2D region) {
+      this.hash = hash;
+      this.region = region;
+    }
+
+    /**
+     * Gets hash.
+     *
+     * @return the SHA-256 hash of the image size and ARGB pixels
+     */
+    public String getHash() {
+      return hash;
+    }
+
+    /**
+     * Gets region.
+     *
+     * @return the region of the page the image is drawn at, in PDF user space units
+     */
+    public Rectangle2D getRegion() {
+      return region;
+    }
+  }
+
+}
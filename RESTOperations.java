@@ -8,11 +8,8 @@ import com.experian.automation.transformers.VariablesTransformer;
 import com.mashape.unirest.http.Headers;
 import com.mashape.unirest.http.HttpMethod;
 import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.Unirest;
 import com.mashape.unirest.http.async.Callback;
 import com.mashape.unirest.http.exceptions.UnirestException;
-import com.mashape.unirest.http.options.Option;
-import com.mashape.unirest.http.options.Options;
 import com.mashape.unirest.request.BaseRequest;
 import com.mashape.unirest.request.HttpRequest;
 import java.io.IOException;
@@ -53,8 +50,8 @@ public class RESTOperations extends APIOperations {
    * Instantiates a new Rest operations.
    */
   public RESTOperations() {
-    Unirest.setDefaultHeader("Content-Type", "application/json"); //NOI18N
-    Unirest.setDefaultHeader("Accept", "application/json;charset=utf-8"); //NOI18N
+    setDefaultHeader("Content-Type", "application/json"); //NOI18N
+    setDefaultHeader("Accept", "application/json;charset=utf-8"); //NOI18N
     returnCodeToRetry.add(503);
     returnCodeToRetry.add(504);
   }
@@ -177,7 +174,7 @@ public class RESTOperations extends APIOperations {
     if (status != returnCode) {
       logger.debug(String.format("Unexpected status received when calling %s: %s - %s",url,returnCode, returnMessage)); //NOI18N
       logger.debug("Request Headers : " + request.getHttpRequest().getHeaders().toString()); //NOI18N
-      logger.debug(String.format("Default Headers: %s", Options.getOption(Option.DEFAULT_HEADERS))); //NOI18N
+      logger.debug(String.format("Default Headers: %s", getDefaultHeaders())); //NOI18N
       logger.debug("Response body : " + bodyMessage); //NOI18N
     }
     return response;
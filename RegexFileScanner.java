@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) Experian, 2020. All rights reserved.
+ */
+package com.experian.automation.helpers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Line based regex scanner for large text files (e.g. service logs).
+ * <p>
+ * The file is memory mapped, split into chunks at line boundaries and the chunks are scanned in parallel. Lines are
+ * decoded as UTF-8 one at a time so memory stays bounded regardless of the file size.
+ * <p>
+ * Example: new RegexFileScanner("C:/Temp/server.log", "ERROR.*").since(offset).matches()
+ */
+public class RegexFileScanner {
+
+  private static final int MIN_CHUNK_SIZE = 4 * 1024 * 1024;
+  private static final int MAX_CHUNK_SIZE = 256 * 1024 * 1024;
+  private static final int BOUNDARY_PROBE_SIZE = 8 * 1024;
+  private static final int BLOCK_SIZE = 64 * 1024;
+
+  private final Path path;
+  private final Pattern pattern;
+
+  // Byte offset the scan starts from
+  private long offset = 0L;
+
+  /**
+   * Instantiates a new Regex file scanner.
+   *
+   * @param file  The full path to the text file (e.g C:/Temp/file.log)
+   * @param regex Regular expression searched for in each line
+   */
+  public RegexFileScanner(String file, String regex) {
+    this.path = Paths.get(file);
+    this.pattern = Pattern.compile(regex);
+  }
+
+  /**
+   * Restricts the scan to the part of the file starting at a given byte offset. Useful to look only at the log lines
+   * written after a previously recorded file size.
+   *
+   * @param byteOffset the byte offset; if it is not at the start of a line the scan begins with the next line
+   * @return the regex file scanner
+   */
+// Builder method to set the start offset
+  public RegexFileScanner since(long byteOffset) {
+    offset = byteOffset;
+    return this;
+  }
+
+  /**
+   * Counts the lines matching the pattern.
+   *
+   * @return Number of matching lines
+   * @throws IOException the io exception
+   */
+  public long count() throws IOException {
+    return scan(ScanMode.COUNT).stream().mapToLong(chunk -> chunk.matchCount).sum();
+  }
+
+  /**
+   * Finds the first line matching the pattern.
+   *
+   * @return the first match or null if no line matches
+   * @throws IOException the io exception
+   */
+  public LineMatch firstMatch() throws IOException {
+    long linesBefore = 0L;
+
+    // Chunks after the first matching one may have been skipped, their line counts are not used
+    for (ChunkResult result : scan(ScanMode.FIRST)) {
+      if (!result.matches.isEmpty()) {
+        LineMatch match = result.matches.get(0);
+        return new LineMatch(linesBefore + match.lineNumber, match.offset, match.line);
+      }
+      linesBefore += result.lineCount;
+    }
+
+    return null;
+  }
+
+  /**
+   * Finds all lines matching the pattern, in file order.
+   *
+   * @return the matches with their line numbers
+   * @throws IOException the io exception
+   */
+  public List<LineMatch> matches() throws IOException {
+    return toLineMatches(scan(ScanMode.ALL));
+  }
+
+  private List<LineMatch> toLineMatches(List<ChunkResult> results) {
+    List<LineMatch> matches = new ArrayList<>();
+    long linesBefore = 0L;
+
+    for (ChunkResult result : results) {
+      for (LineMatch match : result.matches) {
+        matches.add(new LineMatch(linesBefore + match.lineNumber, match.offset, match.line));
+      }
+      linesBefore += result.lineCount;
+    }
+
+    return matches;
+  }
+
+  private List<ChunkResult> scan(ScanMode mode) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      List<long[]> chunks = split(channel);
+      // Lowest index of a chunk with a match, chunks after it are not needed in FIRST mode
+      AtomicInteger firstMatchingChunk = new AtomicInteger(Integer.MAX_VALUE);
+
+      try {
+        return ForkJoinPool.commonPool().submit(
+            () -> IntStream.range(0, chunks.size()).parallel()
+                .mapToObj(index -> scanChunk(channel, chunks.get(index), index, mode, firstMatchingChunk))
+                .collect(Collectors.toList())).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Scan of " + path + " was interrupted", e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause() instanceof ScanException ? e.getCause().getCause() : e.getCause();
+        throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+      }
+    }
+  }
+
+  private List<long[]> split(FileChannel channel) throws IOException {
+    long size = channel.size();
+    long start = offset > 0 ? lineStartFrom(channel, offset - 1) : 0L;
+
+    if (start >= size) {
+      return Collections.emptyList();
+    }
+
+    int parallelism = ForkJoinPool.getCommonPoolParallelism();
+    long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, (size - start) / (parallelism * 4L) + 1));
+
+    List<long[]> chunks = new ArrayList<>();
+    while (start < size) {
+      long end = start + chunkSize >= size ? size : lineStartFrom(channel, start + chunkSize);
+      chunks.add(new long[]{start, end});
+      start = end;
+    }
+
+    return chunks;
+  }
+
+  // Returns the position right after the first line break found at or after the given position
+  private long lineStartFrom(FileChannel channel, long position) throws IOException {
+    long size = channel.size();
+    ByteBuffer probe = ByteBuffer.allocate(BOUNDARY_PROBE_SIZE);
+
+    while (position < size) {
+      probe.clear();
+      int read = channel.read(probe, position);
+      if (read <= 0) {
+        break;
+      }
+      for (int i = 0; i < read; i++) {
+        if (probe.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+      position += read;
+    }
+
+    return size;
+  }
+
+  private ChunkResult scanChunk(FileChannel channel, long[] chunk, int index, ScanMode mode,
+      AtomicInteger firstMatchingChunk) {
+    ChunkResult result = new ChunkResult();
+    if (isSkipped(index, mode, firstMatchingChunk)) {
+      return result;
+    }
+
+    long start = chunk[0];
+    MappedByteBuffer buffer;
+    try {
+      buffer = channel.map(MapMode.READ_ONLY, start, chunk[1] - start);
+    } catch (IOException e) {
+      throw new ScanException(e);
+    }
+
+    Matcher matcher = pattern.matcher("");
+    byte[] block = new byte[BLOCK_SIZE];
+    // Holds the beginning of a line which continues in the next block
+    byte[] carry = new byte[0];
+    int carryLength = 0;
+    long position = start;
+
+    while (buffer.hasRemaining()) {
+      if (isSkipped(index, mode, firstMatchingChunk)) {
+        return result;
+      }
+
+      int read = Math.min(block.length, buffer.remaining());
+      buffer.get(block, 0, read);
+
+      int lineStart = 0;
+      for (int i = 0; i < read; i++) {
+        if (block[i] != '\n') {
+          continue;
+        }
+
+        if (carryLength > 0) {
+          carry = append(carry, carryLength, block, 0, i);
+          matchLine(matcher, carry, 0, carryLength + i, position - carryLength, mode, result);
+          carryLength = 0;
+        } else {
+          matchLine(matcher, block, lineStart, i - lineStart, position + lineStart, mode, result);
+        }
+        if (isFirstFound(index, mode, result, firstMatchingChunk)) {
+          return result;
+        }
+        lineStart = i + 1;
+      }
+
+      if (lineStart < read) {
+        carry = append(carry, carryLength, block, lineStart, read - lineStart);
+        carryLength += read - lineStart;
+      }
+      position += read;
+    }
+
+    if (carryLength > 0) {
+      matchLine(matcher, carry, 0, carryLength, position - carryLength, mode, result);
+    }
+
+    return result;
+  }
+
+  private static boolean isSkipped(int index, ScanMode mode, AtomicInteger firstMatchingChunk) {
+    return mode == ScanMode.FIRST && index > firstMatchingChunk.get();
+  }
+
+  private static boolean isFirstFound(int index, ScanMode mode, ChunkResult result, AtomicInteger firstMatchingChunk) {
+    if (mode != ScanMode.FIRST || result.matches.isEmpty()) {
+      return false;
+    }
+    firstMatchingChunk.accumulateAndGet(index, Math::min);
+    return true;
+  }
+
+  private static byte[] append(byte[] target, int targetLength, byte[] source, int from, int length) {
+    byte[] result = target.length < targetLength + length
+        ? Arrays.copyOf(target, Math.max(targetLength + length, target.length * 2)) : target;
+    System.arraycopy(source, from, result, targetLength, length);
+    return result;
+  }
+
+  private static void matchLine(Matcher matcher, byte[] bytes, int from, int length, long offset, ScanMode mode,
+      ChunkResult result) {
+    result.lineCount++;
+
+    int contentLength = length > 0 && bytes[from + length - 1] == '\r' ? length - 1 : length;
+    String line = new String(bytes, from, contentLength, StandardCharsets.UTF_8);
+
+    if (matcher.reset(line).find()) {
+      result.matchCount++;
+      if (mode != ScanMode.COUNT) {
+        result.matches.add(new LineMatch(result.lineCount, offset, line));
+      }
+    }
+  }
+
+  /**
+   * A line matching the scanned pattern.
+   */
+  public static class LineMatch {
+
+    private final long lineNumber;
+    private final long offset;
+    private final String line;
+
+    private LineMatch(long lineNumber, long offset, String line) {
+      this.lineNumber = lineNumber;
+      this.offset = offset;
+      this.line = line;
+    }
+
+    /**
+     * Gets line number.
+     *
+     * @return the 1-based line number, counted from the scan start offset
+     */
+    public long getLineNumber() {
+      return lineNumber;
+    }
+
+    /**
+     * Gets offset.
+     *
+     * @return the byte offset of the line start in the file
+     */
+    public long getOffset() {
+      return offset;
+    }
+
+    /**
+     * Gets line.
+     *
+     * @return the line content without its line terminator
+     */
+    public String getLine() {
+      return line;
+    }
+
+    @Override
+    public String toString() {
+      return lineNumber + ": " + line;
+    }
+  }
+
+  private enum ScanMode {
+    COUNT, FIRST, ALL
+  }
+
+  private static class ChunkResult {
+
+    private long lineCount = 0L;
+    private long matchCount = 0L;
+    private final List<LineMatch> matches = new ArrayList<>();
+  }
+
+  private static class ScanException extends RuntimeException {
+
+    private ScanException(IOException cause) {
+      super(cause);
+    }
+  }
+}
@@ -7,11 +7,8 @@ import com.experian.automation.logger.Logger;
 import com.experian.automation.transformers.VariablesTransformer;
 import com.mashape.unirest.http.HttpMethod;
 import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.Unirest;
 import com.mashape.unirest.http.async.Callback;
 import com.mashape.unirest.http.exceptions.UnirestException;
-import com.mashape.unirest.http.options.Option;
-import com.mashape.unirest.http.options.Options;
 import com.mashape.unirest.request.HttpRequest;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -65,8 +62,8 @@ public class SOAPOperations extends APIOperations {
    *
    */
   public SOAPOperations() {
-    Unirest.setDefaultHeader(CONTENT_TYPE_NAME, CONTENT_TYPE_VALUE);
-    Unirest.setDefaultHeader("Accept", "application/xml;charset=utf-8");
+    setDefaultHeader(CONTENT_TYPE_NAME, CONTENT_TYPE_VALUE);
+    setDefaultHeader("Accept", "application/xml;charset=utf-8");
   }
 
   /**
@@ -320,9 +317,8 @@ public class SOAPOperations extends APIOperations {
 
   private SOAPMessage createSoapMessage(String message) throws SOAPException, IOException {
 
-    HashMap headers = (HashMap) Options.getOption(Option.DEFAULT_HEADERS);
     MimeHeaders mimeHeaders = new MimeHeaders();
-    mimeHeaders.addHeader(CONTENT_TYPE_NAME, (String) headers.get(CONTENT_TYPE_NAME));
+    mimeHeaders.addHeader(CONTENT_TYPE_NAME, getDefaultHeaders().get(CONTENT_TYPE_NAME));
 
     InputStream stream = new ByteArrayInputStream(message.getBytes());
     SOAPMessage soapMessage = MessageFactory.newInstance(SOAPConstants.DYNAMIC_SOAP_PROTOCOL).createMessage(mimeHeaders,
@@ -3,72 +3,207 @@
  */
 package com.experian.automation.helpers;
 
+import com.experian.automation.logger.Logger;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * The type Text file operations.
  */
 public class TextFileOperations {
 
+  private static final int REPLACE_CHUNK_SIZE = 1024 * 1024;
+
+  private final Logger logger = Logger.getLogger(this.getClass());
+
   /**
    * The method finds a specific pattern in some line inside a text file and replaces the line with a given input.
    *
    * @param file      The full path to the XML file (e.g C:/Temp/file.xml)
    * @param findRegex Regular expression which will be used for locating the string to be replaced
    * @param replace   Replacing string
+   * @return Number of replacements made
+   * @throws IOException the io exception
+   */
+  public long replaceStringInFile(String file, String findRegex, String replace) throws IOException {
+    Map<String, String> rules = new LinkedHashMap<>();
+    rules.put(findRegex, replace);
+    return replaceStringsInFile(file, rules);
+  }
+
+  /**
+   * Applies several find/replace rules to a text file in a single streaming pass.
+   * <p>
+   * The file is processed in chunks cut at line boundaries, so memory stays bounded for large files as long as the
+   * patterns do not match across line breaks. Each chunk is matched as a region of the file, so anchors such as ^, $,
+   * \A and \z only match at the real start and end of the file. Rules are applied in iteration order on each chunk.
+   * The result is written to a temporary file next to the original and renamed into place, so the original is never
+   * left half written. The file is left untouched when nothing matched.
+   *
+   * @param file  The full path to the text file (e.g C:/Temp/file.txt)
+   * @param rules Regular expressions mapped to their replacement strings
+   * @return Number of replacements made
    * @throws IOException the io exception
    */
-  public void replaceStringInFile(String file, String findRegex, String replace) throws IOException {
-    File fileToEdit = new File(file);
-    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fileToEdit), StandardCharsets.UTF_8))){
+  public long replaceStringsInFile(String file, Map<String, String> rules) throws IOException {
+    Path target = Paths.get(file).toAbsolutePath();
+    Map<Pattern, String> patterns = new LinkedHashMap<>();
+    rules.forEach((regex, replace) -> patterns.put(Pattern.compile(regex), replace));
+
+    Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+    long replaced = 0;
+
+    try {
+      try (BufferedReader reader = Files.newBufferedReader(target, StandardCharsets.UTF_8);
+          BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+
+        char[] buffer = new char[REPLACE_CHUNK_SIZE];
+        StringBuilder pending = new StringBuilder();
+        String before = "";
+        int read;
+
+        while ((read = reader.read(buffer)) != -1) {
+          pending.append(buffer, 0, read);
 
-      String line = "", oldtext = "";
-      while ((line = reader.readLine()) != null) {
-        oldtext += line + System.lineSeparator();
+          // Cut before the last line break so the character following the chunk is known
+          int lastLineEnd = pending.lastIndexOf("\n", pending.length() - 2);
+          if (lastLineEnd >= 0) {
+            replaced += replaceChunk(before, pending.substring(0, lastLineEnd + 1),
+                String.valueOf(pending.charAt(lastLineEnd + 1)), patterns, writer);
+            pending.delete(0, lastLineEnd + 1);
+            before = "\n";
+          }
+        }
+
+        if (pending.length() > 0) {
+          replaced += replaceChunk(before, pending.toString(), "", patterns, writer);
+        }
       }
-      String newtext = oldtext.replaceAll(findRegex, replace);
 
-      try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileToEdit), StandardCharsets.UTF_8))) {
-        writer.write(newtext);
+      if (replaced > 0) {
+        FSOperations.moveAtomically(temp, target);
       }
-    } catch (IOException ioe) {
-      ioe.printStackTrace();
+    } finally {
+      Files.deleteIfExists(temp);
     }
+
+    logger.info(String.format("%s replacements made in file %s", replaced, file));
+    return replaced;
+  }
+
+  // The text before and after the chunk is only context: the chunk is matched as a transparent region of it, without
+  // anchoring bounds, and an empty match at the end of a chunk followed by more text is left to the next chunk
+  private long replaceChunk(String before, String chunk, String after, Map<Pattern, String> patterns, Writer writer)
+      throws IOException {
+    long replaced = 0;
+    String text = chunk;
+
+    for (Map.Entry<Pattern, String> rule : patterns.entrySet()) {
+      int start = before.length();
+      int end = start + text.length();
+      Matcher matcher = rule.getKey().matcher(before + text + after);
+      matcher.region(start, end).useAnchoringBounds(false).useTransparentBounds(true);
+      if (!matcher.find() || (!after.isEmpty() && matcher.start() == end)) {
+        continue;
+      }
+
+      StringBuffer result = new StringBuffer(end + after.length());
+      do {
+        matcher.appendReplacement(result, rule.getValue());
+        replaced++;
+      } while (matcher.find() && (after.isEmpty() || matcher.start() < end));
+      matcher.appendTail(result);
+      text = result.substring(start, result.length() - after.length());
+    }
+
+    writer.write(text);
+    return replaced;
   }
 
   /**
-   * Search for number of occurrence through a regex pattern in a text file
+   * Finds the lines of a file which are not present anywhere in another file.
+   * <p>
+   * Only the smaller of the two files is held in memory, as a hash set of its distinct lines; the other file is
+   * streamed against it.
    *
-   * @param file  The full path to the text file (e.g C:/Temp/file.xml)
-   * @param regex Regular expression which will be used for locating the string to be found
-   * @return Number of occurrence which matches the pattern
+   * @param file     The full path to the file whose lines are looked up (e.g C:/Temp/expected.csv)
+   * @param inFile   The full path to the file expected to contain those lines (e.g C:/Temp/actual.csv)
+   * @param maxLines Maximum number of missing lines to report
+   * @return Missing lines keyed by their 1-based line number in file, in file order
    * @throws IOException the io exception
    */
-  public long filterByRegex(String file, String regex) throws IOException {
-    Pattern pattern = Pattern.compile(regex);
-    Path path = Paths.get(file);
-    long found;
+  public Map<Long, String> findMissingLines(String file, String inFile, int maxLines) throws IOException {
+    Path linesPath = Paths.get(file);
+    Path containerPath = Paths.get(inFile);
+    Map<Long, String> missing = new LinkedHashMap<>();
+
+    if (Files.size(linesPath) <= Files.size(containerPath)) {
+      Set<String> notFound = new HashSet<>();
+      try (Stream<String> lines = Files.lines(linesPath)) {
+        lines.forEach(notFound::add);
+      }
+
+      try (BufferedReader reader = Files.newBufferedReader(containerPath)) {
+        String line;
+        while (!notFound.isEmpty() && (line = reader.readLine()) != null) {
+          notFound.remove(line);
+        }
+      }
 
+      if (!notFound.isEmpty()) {
+        collectLines(linesPath, notFound::contains, missing, maxLines);
+      }
+    } else {
+      Set<String> present = new HashSet<>();
+      try (Stream<String> lines = Files.lines(containerPath)) {
+        lines.forEach(present::add);
+      }
+
+      collectLines(linesPath, line -> !present.contains(line), missing, maxLines);
+    }
+
+    return missing;
+  }
+
+  private void collectLines(Path path, Predicate<String> filter, Map<Long, String> collected, int maxLines)
+      throws IOException {
     try (BufferedReader reader = Files.newBufferedReader(path)) {
-      found = reader
-          .lines()
-          .filter(pattern.asPredicate())
-          .count();
+      String line;
+      long lineNumber = 0;
+      while (collected.size() < maxLines && (line = reader.readLine()) != null) {
+        lineNumber++;
+        if (filter.test(line)) {
+          collected.put(lineNumber, line);
+        }
+      }
     }
+  }
 
-    return found;
+  /**
+   * Search for number of occurrence through a regex pattern in a text file. Large files are scanned in parallel,
+   * see {@link RegexFileScanner}.
+   *
+   * @param file  The full path to the text file (e.g C:/Temp/file.xml)
+   * @param regex Regular expression which will be used for locating the string to be found
+   * @return Number of occurrence which matches the pattern
+   * @throws IOException the io exception
+   */
+  public long filterByRegex(String file, String regex) throws IOException {
+    return new RegexFileScanner(file, regex).count();
   }
 
   /**
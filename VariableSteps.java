@@ -7,17 +7,14 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotEquals;
 import static org.testng.Assert.assertTrue;
 
+import com.experian.automation.helpers.CSVFileIndex;
 import com.experian.automation.helpers.Variables;
 import com.experian.automation.logger.Logger;
 import com.experian.automation.transformers.VariablesTransformer;
-import com.opencsv.CSVReader;
 import io.cucumber.java.en.And;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.math.BigDecimal;
-import java.nio.charset.StandardCharsets;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -511,21 +508,12 @@ public class VariableSteps {
         filePath = VariablesTransformer.transformSingleValue(filePath);
         filterName = VariablesTransformer.transformSingleValue(filterName);
 
-        try (
-                CSVReader reader = new CSVReader(new InputStreamReader(new FileInputStream(filePath), StandardCharsets.UTF_8))
-        ) {
-            String[] line;
+        // Rows are looked up through the filter column index kept with the cached CSV index
+        for (String[] line : CSVFileIndex.of(filePath).rowsWhere(0, filterName)) {
+            String variableName = line[1];
+            String variableValue = line[2];
 
-            while ((line = reader.readNext()) != null) {
-
-                String filter = line[0];
-                String variableName = line[1];
-                String variableValue = line[2];
-
-                if (filter.equals(filterName)) {
-                    Variables.set(variableName, variableValue);
-                }
-            }
+            Variables.set(variableName, variableValue);
         }
     }
 
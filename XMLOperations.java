@@ -3,26 +3,30 @@
  */
 package com.experian.automation.helpers;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import javax.xml.XMLConstants;
 import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
@@ -37,10 +41,8 @@ import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
-import net.sf.saxon.Transform;
-import org.apache.commons.io.FileUtils;
+import net.sf.saxon.TransformerFactoryImpl;
 import org.json.JSONObject;
-import org.json.XML;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -54,8 +56,23 @@ import com.experian.automation.transformers.VariablesTransformer;
  */
 public class XMLOperations {
 
-  private static final String DOCUMENTBUILDERFACTORY = "javax.xml.parsers.DocumentBuilderFactory";
   private static final String DOCUMENTBUILDERFACTORYIMPL = "com.sun.org.apache.xerces.internal.jaxp.DocumentBuilderFactoryImpl";
+  private static final String TRANSFORMERFACTORYIMPL = "com.sun.org.apache.xalan.internal.xsltc.trax.TransformerFactoryImpl";
+  private static final int XPATH_CACHE_SIZE = 256;
+  private static final int SCHEMA_CACHE_SIZE = 32;
+  private static final int TEMPLATES_CACHE_SIZE = 32;
+
+  // Compiled schemas and stylesheets are thread safe and shared, keyed by content hash
+  private static final Map<String, Schema> schemas = LRUCache.synchronizedOf(SCHEMA_CACHE_SIZE);
+  private static final Map<String, Templates> stylesheets = LRUCache.synchronizedOf(TEMPLATES_CACHE_SIZE);
+
+  // Builders, transformers, XPath objects and compiled expressions are not thread safe: each thread gets its own,
+  // configured once and reused by the following calls
+  private static final ThreadLocal<DocumentBuilder> documentBuilders = new ThreadLocal<>();
+  private static final ThreadLocal<Transformer> nodeTransformers = new ThreadLocal<>();
+  private static final ThreadLocal<XPath> xPaths = ThreadLocal.withInitial(() -> XPathFactory.newInstance().newXPath());
+  private static final ThreadLocal<Map<String, XPathExpression>> xPathExpressions = ThreadLocal.withInitial(
+      () -> new LRUCache<>(XPATH_CACHE_SIZE));
 
   /**
    * The method creates a new JSON file from an existing XML file.
@@ -65,25 +82,19 @@ public class XMLOperations {
    * @throws IOException the io exception
    */
   public static void convertXMLToJSON(String XMLFile, String JSONFile) throws IOException {
-    Integer OUTPUT_JSON_PRETTY_FACTOR = 1;
-    File inputFile = new File(XMLFile);
-
-    StringBuilder builder;
-    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(inputFile), StandardCharsets.UTF_8))) {
-      builder = new StringBuilder();
-
-      String line;
-      while ((line = reader.readLine()) != null) {
-        builder.append(line);
-      }
-    }
-
-    JSONObject jsonObj = XML.toJSONObject(builder.toString());
-
-    try (BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(JSONFile), StandardCharsets.UTF_8))) {
+    new XMLToJSONConverter(false).convert(XMLFile, JSONFile);
+  }
 
-      bufferedWriter.write(jsonObj.toString(OUTPUT_JSON_PRETTY_FACTOR));
-    }
+  /**
+   * The method writes the JSON converted from an existing XML file to a stream, which is left open.
+   *
+   * @param XMLFile     The full path to the XML (e.g C:/Temp/file.xml)
+   * @param output      the output stream
+   * @param keepStrings Option to keep the values as strings
+   * @throws IOException the io exception
+   */
+  public void convertXMLToJSON(String XMLFile, OutputStream output, boolean keepStrings) throws IOException {
+    new XMLToJSONConverter(keepStrings).convert(XMLFile, output);
   }
 
   /**
@@ -96,20 +107,9 @@ public class XMLOperations {
    * @keepStrings Option to keep the values as strings
    */
   public JSONObject convertXMLToJSON(String XMLFile, boolean keepStrings) throws IOException {
-    File inputFile = new File(XMLFile);
-
-    StringBuilder builder;
-    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(inputFile), StandardCharsets.UTF_8))) {
-      builder = new StringBuilder();
-
-      String line;
-      while ((line = reader.readLine()) != null) {
-        builder.append(line);
-      }
-    }
-
-    JSONObject jsonObj = XML.toJSONObject(builder.toString(), keepStrings);
-    return jsonObj;
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new XMLToJSONConverter(keepStrings).convert(XMLFile, output);
+    return new JSONObject(output.toString(StandardCharsets.UTF_8.name()));
   }
 
   /**
@@ -132,9 +132,41 @@ public class XMLOperations {
    * @throws Exception the exception
    */
   public void XSLtransform(String outputFile, String xmlFile, String xsltFile) throws Exception {
-    String[] args = {"-o:" + outputFile, xmlFile, xsltFile};
-    Transform.main(args);
+    File output = new File(outputFile).getAbsoluteFile();
+    Files.createDirectories(output.getParentFile().toPath());
+
+    try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(output))) {
+      StreamResult result = new StreamResult(outputStream);
+      result.setSystemId(output.toURI().toString());
+      stylesheet(xsltFile).newTransformer().transform(new StreamSource(new File(xmlFile)), result);
+    }
+  }
+
+  /**
+   * The method transforms an XML stream based on XSLT code file
+   *
+   * @param xml      The XML data which will be transformed
+   * @param output   The stream receiving the result of the transformation
+   * @param xsltFile The path to the file which contains the XSLT code
+   * @throws Exception the exception
+   */
+  public void XSLtransform(InputStream xml, OutputStream output, String xsltFile) throws Exception {
+    stylesheet(xsltFile).newTransformer().transform(new StreamSource(xml), new StreamResult(output));
+  }
 
+  /**
+   * The method transforms an XML string based on XSLT code file
+   *
+   * @param xmlString The XML data which will be transformed
+   * @param xsltFile  The path to the file which contains the XSLT code
+   * @return the result of the transformation
+   * @throws Exception the exception
+   */
+  public String XSLtransformToString(String xmlString, String xsltFile) throws Exception {
+    StringWriter writer = new StringWriter();
+    stylesheet(xsltFile).newTransformer()
+        .transform(new StreamSource(new StringReader(xmlString)), new StreamResult(writer));
+    return writer.toString();
   }
 
   /**
@@ -145,13 +177,8 @@ public class XMLOperations {
    * @return the boolean
    */
   public boolean validateXML(String xmlString, String schemaString) {
-    SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
     try {
-      Schema schema = schemaFactory.newSchema(new StreamSource(new java.io.StringReader(schemaString)));
-      schemaFactory.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
-      schemaFactory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-
-      Validator validator = schema.newValidator();
+      Validator validator = schema(schemaString).newValidator();
       // setProperty() calls bellow don't fix XXE issues from SonarLint locally but it is the approach mentioned here - https://rules.sonarsource.com/java/RSPEC-2755
       // And also used in a lot of places in teh powercurve project
       validator.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
@@ -174,7 +201,7 @@ public class XMLOperations {
    * @throws IOException the io exception
    */
   public boolean validateXML(String xmlString, File schemaFile) throws IOException {
-    return validateXML(xmlString, FileUtils.readFileToString(schemaFile, "UTF-8"));
+    return validateXML(xmlString, FixtureCache.text(schemaFile.getPath()));
   }
 
   /**
@@ -185,11 +212,8 @@ public class XMLOperations {
    * @return the string
    */
   public String evaluateXPath(String xmlString, String xPath) {
-    XPathFactory xpathFactory = XPathFactory.newInstance();
-    XPath xpath = xpathFactory.newXPath();
     try {
-      XPathExpression expr =
-          xpath.compile(xPath);
+      XPathExpression expr = compileXPath(xPath);
       return (String) expr.evaluate(convertStringToDocument(xmlString), XPathConstants.STRING);
     } catch (XPathExpressionException e) {
       return "";
@@ -215,15 +239,8 @@ public class XMLOperations {
    * @return the document
    */
   public static Document convertStringToDocument(String xmlStr) {
-    System.setProperty(DOCUMENTBUILDERFACTORY, DOCUMENTBUILDERFACTORYIMPL);
-    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-    factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-    factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
-    DocumentBuilder builder;
     try {
-      factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-      builder = factory.newDocumentBuilder();
-      Document doc = builder.parse(new InputSource(new StringReader(xmlStr)));
+      Document doc = documentBuilder().parse(new InputSource(new StringReader(xmlStr)));
       return doc;
     } catch (Exception e) {
       e.printStackTrace();
@@ -251,18 +268,8 @@ public class XMLOperations {
     DOMSource domSource = new DOMSource(node);
     StringWriter writer = new StringWriter();
     StreamResult result = new StreamResult(writer);
-    System.setProperty("javax.xml.transform.TransformerFactory","com.sun.org.apache.xalan.internal.xsltc.trax.TransformerFactoryImpl");
-    TransformerFactory tf = TransformerFactory.newInstance();
-    tf.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-    tf.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
     try {
-      tf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-      Transformer transformer = tf.newTransformer();
-      transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-      transformer.setOutputProperty(OutputKeys.METHOD, "xml");
-      transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-      transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-      transformer.transform(domSource, result);
+      nodeTransformer().transform(domSource, result);
     } catch (TransformerException e) {
       e.printStackTrace();
     }
@@ -297,13 +304,8 @@ public class XMLOperations {
   }
 
   private static Object getNodesByQName(String filePath, String xpath, QName type) throws Exception {
-    System.setProperty(DOCUMENTBUILDERFACTORY, DOCUMENTBUILDERFACTORYIMPL);
-    DocumentBuilderFactory docBuilder = DocumentBuilderFactory.newInstance();
-    docBuilder.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-    docBuilder.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
-    docBuilder.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-    Document doc = docBuilder.newDocumentBuilder().parse(filePath);
-    XPathExpression expr = XPathFactory.newInstance().newXPath().compile(xpath);
+    Document doc = documentBuilder().parse(filePath);
+    XPathExpression expr = compileXPath(xpath);
     return expr.evaluate(doc, type);
   }
 
@@ -316,14 +318,34 @@ public class XMLOperations {
    * @throws Exception the exception
    */
   public static HashSet<String> getUniqueNodes (String filePath, String xpath) throws Exception {
-    NodeList nodes = getNodesFromXMLFile(filePath, xpath);
     HashSet<String> uniqueNodes = new HashSet<>();
-    for (int i = 0; i < nodes.getLength(); i++) {
-      uniqueNodes.add(nodeToString(nodes.item(i)));
+    for (Node node : selectNodesFromXMLFile(filePath, xpath)) {
+      uniqueNodes.add(nodeToString(node));
     }
     return uniqueNodes;
   }
 
+  /**
+   * Get the nodes from file that match the xpath expression. Expressions supported by {@link XMLStreamXPath} are
+   * evaluated while streaming the file, the others on its DOM document.
+   *
+   * @param filePath - path to xml file
+   * @param xpath    - Xpath expression
+   * @return List<Node> - the nodes in document order
+   * @throws Exception the exception
+   */
+  public static List<Node> selectNodesFromXMLFile(String filePath, String xpath) throws Exception {
+    if (XMLStreamXPath.canSelect(xpath)) {
+      return new XMLStreamXPath(Collections.singletonList(xpath)).select(filePath).get(xpath);
+    }
+    NodeList nodeList = getNodesFromXMLFile(filePath, xpath);
+    List<Node> nodes = new ArrayList<>();
+    for (int i = 0; i < nodeList.getLength(); i++) {
+      nodes.add(nodeList.item(i));
+    }
+    return nodes;
+  }
+
   /**
    * Extract attributes from XML file.
    *
@@ -337,11 +359,19 @@ public class XMLOperations {
    */
   public static List<String> extractXMLattributes (String filePath, String xpathExpression)
       throws XPathExpressionException, IOException, SAXException, ParserConfigurationException {
+    List<String> attributes = new ArrayList<>();
+    if (XMLStreamXPath.canSelect(xpathExpression)) {
+      filePath = VariablesTransformer.transformSingleValue(filePath);
+      for (Node node : new XMLStreamXPath(Collections.singletonList(xpathExpression)).select(filePath)
+          .get(xpathExpression)) {
+        attributes.add(node.getTextContent());
+      }
+      return attributes;
+    }
+
     Document document = getXmlDocument(filePath);
-    XPath xPath = XPathFactory.newInstance().newXPath();
-    NodeList nodeList = (NodeList) xPath.compile(xpathExpression).evaluate(document, XPathConstants.NODESET);
+    NodeList nodeList = (NodeList) compileXPath(xpathExpression).evaluate(document, XPathConstants.NODESET);
 
-    List<String> attributes = new ArrayList<>();
     for(int i = 0; i < nodeList.getLength(); i ++) {
       attributes.add(nodeList.item(i).getTextContent());
     }
@@ -361,8 +391,33 @@ public class XMLOperations {
    */
   public static boolean containsXpathInXML(String filePath, String xpathExpression)
       throws IOException, SAXException, ParserConfigurationException, XPathExpressionException {
+    return containsXpathsInXML(filePath, Collections.singletonList(xpathExpression)).get(xpathExpression);
+  }
+
+  /**
+   * Check XML file contains attributes, reading the file once for all the expressions. When all the expressions are
+   * supported by {@link XMLStreamXPath} the file is streamed, otherwise it is loaded as a DOM document.
+   *
+   * @param filePath the target path to the file.
+   * @param xpathExpressions xpaths that lead to the attributes.
+   * @return Map<String, Boolean> - whether the file contains each xpath
+   * @throws SAXException the exception
+   * @throws ParserConfigurationException the parcerConfigurationException
+   * @throws XPathExpressionException the XpathExpressionException
+   * @throws IOException the io exception
+   */
+  public static Map<String, Boolean> containsXpathsInXML(String filePath, List<String> xpathExpressions)
+      throws IOException, SAXException, ParserConfigurationException, XPathExpressionException {
+    if (xpathExpressions.stream().allMatch(XMLStreamXPath::canTest)) {
+      return new XMLStreamXPath(xpathExpressions).test(VariablesTransformer.transformSingleValue(filePath));
+    }
+
     Document document = getXmlDocument(filePath);
-    return containsXpathInXML(document, xpathExpression);
+    Map<String, Boolean> results = new LinkedHashMap<>();
+    for (String xpathExpression : xpathExpressions) {
+      results.put(xpathExpression, containsXpathInXML(document, xpathExpression));
+    }
+    return results;
   }
 
   /**
@@ -375,8 +430,7 @@ public class XMLOperations {
    */
   public static boolean containsXpathInXML (Document document, String xpathExpression)
           throws XPathExpressionException {
-    XPath xPath = XPathFactory.newInstance().newXPath();
-    return (Boolean) xPath.compile(xpathExpression).evaluate(document, XPathConstants.BOOLEAN);
+    return (Boolean) compileXPath(xpathExpression).evaluate(document, XPathConstants.BOOLEAN);
   }
 
   /**
@@ -389,12 +443,82 @@ public class XMLOperations {
    */
   public static Document getXmlDocument(String filePath) throws ParserConfigurationException, IOException, SAXException {
     filePath = VariablesTransformer.transformSingleValue(filePath);
-    System.setProperty(DOCUMENTBUILDERFACTORY, DOCUMENTBUILDERFACTORYIMPL);
-    DocumentBuilderFactory docBuilder = DocumentBuilderFactory.newInstance();
-    docBuilder.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-    docBuilder.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
-    // protect against Denial of Service attack and remote file access
-    docBuilder.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-    return docBuilder.newDocumentBuilder().parse(filePath);
+    return documentBuilder().parse(filePath);
+  }
+
+  /**
+   * Compiles an XPath expression, reusing the expression compiled earlier by the same thread. The expression must
+   * not be shared with other threads.
+   *
+   * @param xpathExpression the xpath expression
+   * @return the compiled expression
+   * @throws XPathExpressionException the XpathExpressionException
+   */
+  public static XPathExpression compileXPath(String xpathExpression) throws XPathExpressionException {
+    Map<String, XPathExpression> expressions = xPathExpressions.get();
+    XPathExpression expression = expressions.get(xpathExpression);
+    if (expression == null) {
+      expression = xPaths.get().compile(xpathExpression);
+      expressions.put(xpathExpression, expression);
+    }
+    return expression;
+  }
+
+  private static Schema schema(String schemaString) throws SAXException, IOException {
+    String key = FixtureCache.digestOf(schemaString);
+    Schema schema = schemas.get(key);
+    if (schema == null) {
+      SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+      schema = schemaFactory.newSchema(new StreamSource(new java.io.StringReader(schemaString)));
+      schemaFactory.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+      schemaFactory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+      schemas.put(key, schema);
+    }
+    return schema;
+  }
+
+  // Stylesheets are compiled with Saxon, as the Saxon command line used before, and keyed by location and content
+  // since imports and includes are resolved relative to the stylesheet
+  private static Templates stylesheet(String xsltFile) throws IOException, TransformerException {
+    File file = new File(xsltFile).getAbsoluteFile();
+    String key = file.toURI() + "#" + FixtureCache.digest(file.getPath());
+    Templates templates = stylesheets.get(key);
+    if (templates == null) {
+      templates = new TransformerFactoryImpl().newTemplates(new StreamSource(file));
+      stylesheets.put(key, templates);
+    }
+    return templates;
+  }
+
+  // The JDK implementations are requested explicitly instead of through the global factory system properties
+  private static DocumentBuilder documentBuilder() throws ParserConfigurationException {
+    DocumentBuilder builder = documentBuilders.get();
+    if (builder == null) {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance(DOCUMENTBUILDERFACTORYIMPL, null);
+      factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+      factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+      // protect against Denial of Service attack and remote file access
+      factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+      builder = factory.newDocumentBuilder();
+      documentBuilders.set(builder);
+    }
+    return builder;
+  }
+
+  private static Transformer nodeTransformer() throws TransformerException {
+    Transformer transformer = nodeTransformers.get();
+    if (transformer == null) {
+      TransformerFactory tf = TransformerFactory.newInstance(TRANSFORMERFACTORYIMPL, null);
+      tf.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+      tf.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+      tf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+      transformer = tf.newTransformer();
+      transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+      transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+      transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+      transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+      nodeTransformers.set(transformer);
+    }
+    return transformer;
   }
 }
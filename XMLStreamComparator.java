@@ -0,0 +1,481 @@
+/*
+ * Copyright (c) Experian, 2020. All rights reserved.
+ */
+package com.experian.automation.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming comparison of two XML documents, for generated outputs too large to be compared as DOM trees.
+ * <p>
+ * Both documents are read with StAX readers and compared event by event in document order, so memory only depends on
+ * the nesting depth. Like the XMLUnit settings used so far, comments and whitespace only text are ignored, white
+ * space inside text is normalized and attributes are compared regardless of their order; each option can be turned
+ * off. Element and attribute names are compared by namespace URI and local name.
+ * <p>
+ * Nodes are identified by XPath locations with positions as reported by XMLUnit, e.g.
+ * /DAXMLDocument[1]/OCONTROL[1]/EDITIONDATE[1]/value[1]/text()[1] or /DAXMLDocument[1]/@version. Excluded or
+ * customized locations may leave out positions to match any position, use * for any element name and start with //
+ * to match at any depth.
+ * <p>
+ * Example: new XMLStreamComparator().excluding("//EDITIONDATE/value/text()").compare(goldenFile, resultFile)
+ */
+public class XMLStreamComparator {
+
+  private static final int DEFAULT_MAX_DIFFERENCES = 50;
+  private static final int MAX_VALUE_LENGTH = 100;
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+  private static final Pattern STEP = Pattern.compile("(@?)([^\\[/]+)(?:\\[(\\d+)])?");
+
+  private static final XMLInputFactory inputFactory = createInputFactory();
+
+  private boolean ignoreComments = true;
+  private boolean ignoreWhitespace = true;
+  private boolean normalizeWhitespace = true;
+  private int maxDifferences = DEFAULT_MAX_DIFFERENCES;
+
+  // Location pattern -> regular expression the actual value has to match
+  private final Map<Pattern, Pattern> customizations = new LinkedHashMap<>();
+  private final List<Pattern> exclusions = new ArrayList<>();
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
+  /**
+   * Sets whether comments are ignored (true by default).
+   *
+   * @param ignoreComments the ignore comments
+   * @return the XML stream comparator
+   */
+// Builder method to set whether comments are ignored
+  public XMLStreamComparator ignoreComments(boolean ignoreComments) {
+    this.ignoreComments = ignoreComments;
+    return this;
+  }
+
+  /**
+   * Sets whether text made only of white space is ignored (true by default).
+   *
+   * @param ignoreWhitespace the ignore whitespace
+   * @return the XML stream comparator
+   */
+// Builder method to set whether whitespace only text is ignored
+  public XMLStreamComparator ignoreWhitespace(boolean ignoreWhitespace) {
+    this.ignoreWhitespace = ignoreWhitespace;
+    return this;
+  }
+
+  /**
+   * Sets whether text is trimmed and white space runs are compared as a single space (true by default).
+   *
+   * @param normalizeWhitespace the normalize whitespace
+   * @return the XML stream comparator
+   */
+// Builder method to set whether whitespace is normalized
+  public XMLStreamComparator normalizeWhitespace(boolean normalizeWhitespace) {
+    this.normalizeWhitespace = normalizeWhitespace;
+    return this;
+  }
+
+  /**
+   * Sets the number of differences after which the comparison stops.
+   *
+   * @param maxDifferences the maximal number of reported differences
+   * @return the XML stream comparator
+   */
+// Builder method to set the difference limit
+  public XMLStreamComparator maxDifferences(int maxDifferences) {
+    this.maxDifferences = maxDifferences;
+    return this;
+  }
+
+  /**
+   * Compares the text or attribute values at a location with a regular expression instead of the expected value.
+   *
+   * @param location the text or attribute location
+   * @param regex    the regular expression the whole actual value has to match
+   * @return the XML stream comparator
+   */
+// Builder method to add a regex customization
+  public XMLStreamComparator withCustomization(String location, String regex) {
+    customizations.put(toLocationPattern(location), Pattern.compile(regex));
+    return this;
+  }
+
+  /**
+   * Leaves the nodes at a location out of the comparison, whether or not they are present. Excluding an element
+   * excludes its whole content.
+   *
+   * @param location the element, text or attribute location
+   * @return the XML stream comparator
+   */
+// Builder method to add an excluded location
+  public XMLStreamComparator excluding(String location) {
+    exclusions.add(toLocationPattern(location));
+    return this;
+  }
+
+  /**
+   * Compares two XML files.
+   *
+   * @param expectedFile The full path to the expected (golden) file
+   * @param actualFile   The full path to the actual file
+   * @return the differences with their locations, at most the configured limit; empty if the documents match
+   * @throws IOException the io exception
+   */
+  public List<String> compare(String expectedFile, String actualFile) throws IOException {
+    try (InputStream expected = Files.newInputStream(Paths.get(expectedFile));
+        InputStream actual = Files.newInputStream(Paths.get(actualFile))) {
+      return compare(inputFactory.createXMLStreamReader(expected), inputFactory.createXMLStreamReader(actual));
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Compares two XML strings.
+   *
+   * @param expectedXML the expected XML
+   * @param actualXML   the actual XML
+   * @return the differences with their locations, at most the configured limit; empty if the documents match
+   * @throws IOException the io exception
+   */
+  public List<String> compareContent(String expectedXML, String actualXML) throws IOException {
+    try (Reader expected = new StringReader(expectedXML); Reader actual = new StringReader(actualXML)) {
+      return compare(inputFactory.createXMLStreamReader(expected), inputFactory.createXMLStreamReader(actual));
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private List<String> compare(XMLStreamReader expectedReader, XMLStreamReader actualReader)
+      throws XMLStreamException {
+
+    Cursor expected = new Cursor(expectedReader);
+    Cursor actual = new Cursor(actualReader);
+    List<String> differences = new ArrayList<>();
+
+    try {
+      while (differences.size() < maxDifferences) {
+        Event expectedEvent = expected.next();
+        Event actualEvent = actual.next();
+
+        if (expectedEvent.type == XMLStreamConstants.END_DOCUMENT
+            && actualEvent.type == XMLStreamConstants.END_DOCUMENT) {
+          break;
+        }
+
+        if (expectedEvent.type == actualEvent.type) {
+          compareEvents(expectedEvent, actualEvent, expected, actual, differences);
+        } else if (actualEvent.type == XMLStreamConstants.END_ELEMENT
+            || actualEvent.type == XMLStreamConstants.END_DOCUMENT
+            || (expectedEvent.type == XMLStreamConstants.CHARACTERS
+                && actualEvent.type == XMLStreamConstants.START_ELEMENT)) {
+          differences.add(expectedEvent.location + ": Expected " + expectedEvent + " is missing");
+          expected.skip(expectedEvent);
+          actual.pushBack(actualEvent);
+        } else {
+          differences.add(actualEvent.location + ": Unexpected " + actualEvent);
+          actual.skip(actualEvent);
+          expected.pushBack(expectedEvent);
+        }
+      }
+    } finally {
+      expectedReader.close();
+      actualReader.close();
+    }
+
+    if (differences.size() >= maxDifferences) {
+      differences.add("Comparison stopped at the limit of " + maxDifferences + " differences");
+    }
+    return differences;
+  }
+
+  private void compareEvents(Event expected, Event actual, Cursor expectedCursor, Cursor actualCursor,
+      List<String> differences) throws XMLStreamException {
+
+    if (expected.type == XMLStreamConstants.START_ELEMENT) {
+      if (!expected.name.equals(actual.name)) {
+        differences.add(expected.location + ": Expected " + expected + " but found " + actual);
+        expectedCursor.skip(expected);
+        actualCursor.skip(actual);
+        return;
+      }
+
+      for (Map.Entry<String, String> attribute : expected.attributes.entrySet()) {
+        String location = expected.location + "/@" + localName(attribute.getKey());
+        if (!isExcluded(location)) {
+          compareValues(location, attribute.getValue(), actual.attributes.get(attribute.getKey()), differences);
+        }
+      }
+      for (String attribute : actual.attributes.keySet()) {
+        String location = expected.location + "/@" + localName(attribute);
+        if (!expected.attributes.containsKey(attribute) && !isExcluded(location)) {
+          differences.add(location + ": Unexpected attribute");
+        }
+      }
+    } else if (expected.type == XMLStreamConstants.CHARACTERS || expected.type == XMLStreamConstants.COMMENT) {
+      compareValues(expected.location, expected.text, actual.text, differences);
+    }
+  }
+
+  private void compareValues(String location, String expected, String actual, List<String> differences) {
+    if (actual == null) {
+      differences.add(location + ": Expected attribute is missing");
+      return;
+    }
+
+    Pattern customization = customization(location);
+    if (customization != null) {
+      if (!customization.matcher(actual).matches()) {
+        differences.add(location + ": Expected value matching " + customization.pattern() + " but found '"
+                            + truncate(actual) + "'");
+      }
+    } else if (!normalize(expected).equals(normalize(actual))) {
+      differences.add(location + ": Expected '" + truncate(expected) + "' but found '" + truncate(actual) + "'");
+    }
+  }
+
+  private String normalize(String text) {
+    return normalizeWhitespace ? WHITESPACE.matcher(text).replaceAll(" ").trim() : text;
+  }
+
+  private boolean isExcluded(String location) {
+    for (Pattern exclusion : exclusions) {
+      if (exclusion.matcher(location).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Pattern customization(String location) {
+    for (Map.Entry<Pattern, Pattern> customization : customizations.entrySet()) {
+      if (customization.getKey().matcher(location).matches()) {
+        return customization.getValue();
+      }
+    }
+    return null;
+  }
+
+  private static Pattern toLocationPattern(String location) {
+    boolean anyDepth = location.startsWith("//");
+    StringBuilder regex = new StringBuilder(anyDepth ? "(?:/[^/]+)*" : "");
+
+    for (String step : location.substring(anyDepth ? 2 : 1).split("/")) {
+      Matcher matcher = STEP.matcher(step);
+      if (!matcher.matches()) {
+        throw new IllegalArgumentException("Unsupported location step " + step + " in " + location);
+      }
+
+      regex.append('/').append(matcher.group(1).isEmpty() ? "" : "@");
+      regex.append("*".equals(matcher.group(2)) ? "[^/\\[@]+" : Pattern.quote(matcher.group(2)));
+      if (matcher.group(1).isEmpty()) {
+        regex.append(matcher.group(3) == null ? "\\[\\d+]" : Pattern.quote("[" + matcher.group(3) + "]"));
+      }
+    }
+    return Pattern.compile(regex.toString());
+  }
+
+  private static String localName(String name) {
+    return name.substring(name.indexOf('}') + 1);
+  }
+
+  private static String truncate(String value) {
+    return value.length() > MAX_VALUE_LENGTH ? value.substring(0, MAX_VALUE_LENGTH) + "..." : value;
+  }
+
+  /**
+   * Reads the significant events of one document and keeps track of their locations.
+   */
+  private class Cursor {
+
+    private final XMLStreamReader reader;
+    private final Deque<Frame> frames = new ArrayDeque<>();
+    private Event pushedBack;
+    // True when the reader is on an event which was read ahead and not handled yet
+    private boolean replay = false;
+
+    private Cursor(XMLStreamReader reader) {
+      this.reader = reader;
+      frames.push(new Frame(""));
+    }
+
+    private void pushBack(Event event) {
+      pushedBack = event;
+    }
+
+    private Event next() throws XMLStreamException {
+      if (pushedBack != null) {
+        Event event = pushedBack;
+        pushedBack = null;
+        return event;
+      }
+
+      while (true) {
+        Event event = read();
+        if (event == null) {
+          continue;
+        }
+        if (isExcluded(event.location)) {
+          skip(event);
+          continue;
+        }
+        return event;
+      }
+    }
+
+    // Reads the next event, null if it is not significant
+    private Event read() throws XMLStreamException {
+      if (!replay && !reader.hasNext()) {
+        return new Event(XMLStreamConstants.END_DOCUMENT, "", null, null, null);
+      }
+
+      int type = replay ? reader.getEventType() : reader.next();
+      replay = false;
+      Frame frame = frames.peek();
+      switch (type) {
+        case XMLStreamConstants.START_ELEMENT:
+          String name = reader.getLocalName();
+          String location = frame.location + "/" + name + "[" + frame.childPosition(name) + "]";
+          Map<String, String> attributes = new HashMap<>();
+          for (int i = 0; i < reader.getAttributeCount(); i++) {
+            attributes.put(qualifiedName(reader.getAttributeNamespace(i), reader.getAttributeLocalName(i)),
+                           reader.getAttributeValue(i));
+          }
+          frames.push(new Frame(location));
+          return new Event(type, location, qualifiedName(reader.getNamespaceURI(), name), attributes, null);
+        case XMLStreamConstants.END_ELEMENT:
+          return new Event(type, frames.pop().location, null, null, null);
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          return readText(frame);
+        case XMLStreamConstants.COMMENT:
+          return ignoreComments ? null
+              : new Event(type, frame.location + "/comment()[" + frame.childPosition("comment()") + "]", null, null,
+                          reader.getText());
+        case XMLStreamConstants.END_DOCUMENT:
+          return new Event(type, "", null, null, null);
+        default:
+          return null;
+      }
+    }
+
+    // Joins the text split by ignored comments or processing instructions, as a normalized DOM would
+    private Event readText(Frame frame) throws XMLStreamException {
+      StringBuilder text = new StringBuilder(reader.getText());
+      while (reader.hasNext()) {
+        int type = reader.next();
+        if (type == XMLStreamConstants.CHARACTERS || type == XMLStreamConstants.CDATA
+            || type == XMLStreamConstants.SPACE) {
+          text.append(reader.getText());
+        } else if (type != XMLStreamConstants.PROCESSING_INSTRUCTION
+            && (type != XMLStreamConstants.COMMENT || !ignoreComments)) {
+          // The event following the text is handled by the next read
+          replay = true;
+          break;
+        }
+      }
+
+      if (ignoreWhitespace && text.toString().trim().isEmpty()) {
+        return null;
+      }
+      return new Event(XMLStreamConstants.CHARACTERS,
+                       frame.location + "/text()[" + frame.childPosition("text()") + "]", null, null,
+                       text.toString());
+    }
+
+    private String qualifiedName(String namespace, String localName) {
+      return namespace == null || namespace.isEmpty() ? localName : "{" + namespace + "}" + localName;
+    }
+
+    // Skips the content of an element whose start event was returned
+    private void skip(Event event) throws XMLStreamException {
+      if (event.type != XMLStreamConstants.START_ELEMENT) {
+        return;
+      }
+      int depth = 1;
+      while (depth > 0) {
+        int type = reader.next();
+        if (type == XMLStreamConstants.START_ELEMENT) {
+          depth++;
+        } else if (type == XMLStreamConstants.END_ELEMENT) {
+          depth--;
+        }
+      }
+      frames.pop();
+    }
+  }
+
+  private static class Frame {
+
+    private final String location;
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    private Frame(String location) {
+      this.location = location;
+    }
+
+    private int childPosition(String name) {
+      return positions.merge(name, 1, Integer::sum);
+    }
+  }
+
+  private static class Event {
+
+    private final int type;
+    private final String location;
+    private final String name;
+    private final Map<String, String> attributes;
+    private final String text;
+
+    private Event(int type, String location, String name, Map<String, String> attributes, String text) {
+      this.type = type;
+      this.location = location;
+      this.name = name;
+      this.attributes = attributes;
+      this.text = text;
+    }
+
+    @Override
+    public String toString() {
+      switch (type) {
+        case XMLStreamConstants.START_ELEMENT:
+          return "element <" + name + ">";
+        case XMLStreamConstants.CHARACTERS:
+          return "text '" + truncate(Objects.toString(text)) + "'";
+        case XMLStreamConstants.COMMENT:
+          return "comment '" + truncate(Objects.toString(text)) + "'";
+        case XMLStreamConstants.END_ELEMENT:
+          return "end of element";
+        default:
+          return "end of document";
+      }
+    }
+  }
+}
@@ -0,0 +1,630 @@
+/*
+ * Copyright (c) Experian, 2020. All rights reserved.
+ */
+package com.experian.automation.helpers;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Single pass evaluation of a subset of XPath over XML files too large to be loaded as DOM documents.
+ * <p>
+ * The file is read with a StAX reader and all the expressions are evaluated at once, so memory only depends on the
+ * nesting depth and on the size of the selected nodes. Supported expressions are absolute paths made of child (/)
+ * and descendant (//) steps, each step being an element name or * with any number of [@attr] or [@attr='value']
+ * predicates, optionally ending with @attr, @* or text(). A path may also be compared to a string literal, e.g.
+ * /entityComposition/entity/@name='REL'. Names are matched by local name, as the XPath evaluation of the non
+ * namespace aware DOM documents used so far. Other expressions are not supported and have to be evaluated on DOM,
+ * see {@link #canSelect(String)} and {@link #canTest(String)}.
+ * <p>
+ * Selected elements, attributes and text are returned as detached DOM nodes, so callers can serialize or import them
+ * like the nodes of a parsed document.
+ * <p>
+ * Example: new XMLStreamXPath(Arrays.asList("//bundle/@name")).select("C:/Temp/export.xml")
+ */
+public class XMLStreamXPath {
+
+  private static final Pattern NAME = Pattern.compile("\\*|[A-Za-z_][\\w.\\-]*");
+  private static final String TEXT_STEP = "text()";
+  private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+  private static final XMLInputFactory inputFactory = createInputFactory();
+
+  private final Map<String, Expression> expressions = new LinkedHashMap<>();
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    // CDATA sections stay separate text nodes, as in DOM
+    if (factory.isPropertySupported(REPORT_CDATA)) {
+      factory.setProperty(REPORT_CDATA, true);
+    }
+    return factory;
+  }
+
+  /**
+   * Instantiates a new streaming XPath evaluation.
+   *
+   * @param expressions the XPath expressions, all supported by {@link #canTest(String)}
+   */
+  public XMLStreamXPath(Collection<String> expressions) {
+    for (String expression : expressions) {
+      Expression compiled = Expression.parse(expression);
+      if (compiled == null) {
+        throw new IllegalArgumentException("XPath expression not supported by streaming evaluation: " + expression);
+      }
+      this.expressions.put(expression, compiled);
+    }
+  }
+
+  /**
+   * Tells whether an expression selecting nodes can be evaluated while streaming.
+   *
+   * @param expression the XPath expression
+   * @return true if the expression is a supported path
+   */
+  public static boolean canSelect(String expression) {
+    Expression compiled = Expression.parse(expression);
+    return compiled != null && compiled.literal == null;
+  }
+
+  /**
+   * Tells whether the boolean value of an expression can be evaluated while streaming.
+   *
+   * @param expression the XPath expression
+   * @return true if the expression is a supported path or path comparison
+   */
+  public static boolean canTest(String expression) {
+    return Expression.parse(expression) != null;
+  }
+
+  /**
+   * Selects the nodes matching each path.
+   *
+   * @param filePath the path to the XML file
+   * @return the selected nodes by expression, in document order
+   * @throws IOException the io exception
+   */
+  public Map<String, List<Node>> select(String filePath) throws IOException {
+    Document owner;
+    try {
+      owner = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    } catch (ParserConfigurationException e) {
+      throw new IOException(e);
+    }
+
+    List<Evaluation> evaluations = new ArrayList<>();
+    for (Expression expression : expressions.values()) {
+      if (expression.literal != null) {
+        throw new IllegalStateException("XPath comparison does not select nodes: " + expression.source);
+      }
+      evaluations.add(new Evaluation(expression, owner));
+    }
+    evaluate(filePath, evaluations, false);
+
+    Map<String, List<Node>> nodes = new LinkedHashMap<>();
+    for (Evaluation evaluation : evaluations) {
+      nodes.put(evaluation.expression.source, evaluation.nodes);
+    }
+    return nodes;
+  }
+
+  /**
+   * Evaluates each expression as a boolean: a path is true when it selects nodes, a comparison when one of the
+   * selected nodes has the given value. Reading stops as soon as all the expressions are true.
+   *
+   * @param filePath the path to the XML file
+   * @return the boolean value by expression
+   * @throws IOException the io exception
+   */
+  public Map<String, Boolean> test(String filePath) throws IOException {
+    List<Evaluation> evaluations = new ArrayList<>();
+    for (Expression expression : expressions.values()) {
+      evaluations.add(new Evaluation(expression, null));
+    }
+    evaluate(filePath, evaluations, true);
+
+    Map<String, Boolean> results = new LinkedHashMap<>();
+    for (Evaluation evaluation : evaluations) {
+      results.put(evaluation.expression.source, evaluation.found);
+    }
+    return results;
+  }
+
+  private static void evaluate(String filePath, List<Evaluation> evaluations, boolean stopWhenFound)
+      throws IOException {
+    try (InputStream input = new BufferedInputStream(Files.newInputStream(Paths.get(filePath)))) {
+      XMLStreamReader reader = inputFactory.createXMLStreamReader(input);
+      try {
+        Walker walker = new Walker(evaluations);
+        StringBuilder text = new StringBuilder();
+        while (reader.hasNext() && !(stopWhenFound && walker.allFound())) {
+          int type = reader.next();
+          // Adjacent character events make a single text node, as in DOM
+          if (type == XMLStreamConstants.CHARACTERS || type == XMLStreamConstants.SPACE) {
+            text.append(reader.getText());
+            continue;
+          }
+          if (text.length() > 0) {
+            walker.text(text.toString(), false);
+            text.setLength(0);
+          }
+          if (type == XMLStreamConstants.CDATA) {
+            walker.text(reader.getText(), true);
+            continue;
+          }
+          walker.endText();
+          switch (type) {
+            case XMLStreamConstants.START_ELEMENT:
+              walker.startElement(reader);
+              break;
+            case XMLStreamConstants.END_ELEMENT:
+              walker.endElement();
+              break;
+            case XMLStreamConstants.COMMENT:
+              walker.capture(node -> node.appendChild(node.getOwnerDocument().createComment(reader.getText())));
+              break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+              walker.capture(node -> node.appendChild(
+                  node.getOwnerDocument().createProcessingInstruction(reader.getPITarget(), reader.getPIData())));
+              break;
+            default:
+              break;
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException("Could not read XML file " + filePath, e);
+    }
+  }
+
+  private static String qualifiedName(String prefix, String localName) {
+    return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+  }
+
+  private enum Target {
+    ELEMENT, ATTRIBUTE, TEXT
+  }
+
+  private static class Step {
+
+    private final boolean descendant;
+    // null for *
+    private final String name;
+    // attribute name and expected value, null when the attribute only has to exist
+    private final List<String[]> predicates = new ArrayList<>();
+
+    private Step(boolean descendant, String name) {
+      this.descendant = descendant;
+      this.name = name;
+    }
+
+    private boolean matches(XMLStreamReader reader) {
+      if (name != null && !name.equals(reader.getLocalName())) {
+        return false;
+      }
+      for (String[] predicate : predicates) {
+        String value = attribute(reader, predicate[0]);
+        if (value == null || (predicate[1] != null && !predicate[1].equals(value))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static String attribute(XMLStreamReader reader, String name) {
+      for (int i = 0; i < reader.getAttributeCount(); i++) {
+        if (name.equals(reader.getAttributeLocalName(i))) {
+          return reader.getAttributeValue(i);
+        }
+      }
+      return null;
+    }
+  }
+
+  private static class Expression {
+
+    private final String source;
+    private final List<Step> steps = new ArrayList<>();
+    private Target target = Target.ELEMENT;
+    // null for @*
+    private String attribute;
+    // value the selected nodes are compared to, null for a plain path
+    private String literal;
+
+    private Expression(String source) {
+      this.source = source;
+    }
+
+    // Returns null when the expression is outside of the supported subset
+    private static Expression parse(String source) {
+      Expression expression = new Expression(source);
+      String path = source.trim();
+
+      int equals = topLevelEquals(path);
+      if (equals == -2) {
+        return null;
+      }
+      if (equals >= 0) {
+        expression.literal = literal(path.substring(equals + 1).trim());
+        if (expression.literal == null) {
+          return null;
+        }
+        path = path.substring(0, equals).trim();
+      }
+
+      if (!path.startsWith("/")) {
+        return null;
+      }
+      int position = 0;
+      while (position < path.length()) {
+        if (expression.target != Target.ELEMENT) {
+          // @attr and text() have to be the last step
+          return null;
+        }
+        boolean descendant = path.startsWith("//", position);
+        position += descendant ? 2 : 1;
+        int end = stepEnd(path, position);
+        if (end < 0 || !expression.addStep(descendant, path.substring(position, end))) {
+          return null;
+        }
+        position = end;
+      }
+      return expression.steps.isEmpty() ? null : expression;
+    }
+
+    private boolean addStep(boolean descendant, String step) {
+      if (step.equals(TEXT_STEP) || step.startsWith("@")) {
+        if (descendant) {
+          return false;
+        }
+        if (step.equals(TEXT_STEP)) {
+          target = Target.TEXT;
+          return true;
+        }
+        String name = step.substring(1);
+        target = Target.ATTRIBUTE;
+        attribute = "*".equals(name) ? null : name;
+        return NAME.matcher(name).matches();
+      }
+
+      int bracket = step.indexOf('[');
+      String name = bracket < 0 ? step : step.substring(0, bracket);
+      if (!NAME.matcher(name).matches()) {
+        return false;
+      }
+      Step parsed = new Step(descendant, "*".equals(name) ? null : name);
+
+      String predicates = bracket < 0 ? "" : step.substring(bracket);
+      while (!predicates.isEmpty()) {
+        int close = predicateEnd(predicates);
+        if (!predicates.startsWith("[@") || close < 0) {
+          return false;
+        }
+        String predicate = predicates.substring(2, close - 1).trim();
+        int equals = topLevelEquals(predicate);
+        String attributeName = equals < 0 ? predicate : predicate.substring(0, equals).trim();
+        String value = equals < 0 ? null : literal(predicate.substring(equals + 1).trim());
+        if (equals == -2 || (equals >= 0 && value == null) || !NAME.matcher(attributeName).matches()
+            || "*".equals(attributeName)) {
+          return false;
+        }
+        parsed.predicates.add(new String[]{attributeName, value});
+        predicates = predicates.substring(close);
+      }
+      steps.add(parsed);
+      return true;
+    }
+
+    // Index of the first / outside of quotes and brackets, the length at the end, -1 when unbalanced
+    private static int stepEnd(String path, int from) {
+      int depth = 0;
+      char quote = 0;
+      for (int i = from; i < path.length(); i++) {
+        char current = path.charAt(i);
+        if (quote != 0) {
+          quote = current == quote ? 0 : quote;
+        } else if (current == '\'' || current == '"') {
+          quote = current;
+        } else if (current == '[') {
+          depth++;
+        } else if (current == ']') {
+          depth--;
+        } else if (current == '/' && depth == 0) {
+          return i;
+        }
+      }
+      return quote == 0 && depth == 0 ? path.length() : -1;
+    }
+
+    // Index after the ] closing the predicate the string starts with, -1 when unbalanced
+    private static int predicateEnd(String predicates) {
+      char quote = 0;
+      for (int i = 1; i < predicates.length(); i++) {
+        char current = predicates.charAt(i);
+        if (quote != 0) {
+          quote = current == quote ? 0 : quote;
+        } else if (current == '\'' || current == '"') {
+          quote = current;
+        } else if (current == '[') {
+          return -1;
+        } else if (current == ']') {
+          return i + 1;
+        }
+      }
+      return -1;
+    }
+
+    // Index of the = outside of quotes and brackets, -1 when there is none, -2 for other comparison operators
+    private static int topLevelEquals(String path) {
+      int depth = 0;
+      char quote = 0;
+      for (int i = 0; i < path.length(); i++) {
+        char current = path.charAt(i);
+        if (quote != 0) {
+          quote = current == quote ? 0 : quote;
+        } else if (current == '\'' || current == '"') {
+          quote = current;
+        } else if (current == '[') {
+          depth++;
+        } else if (current == ']') {
+          depth--;
+        } else if (depth == 0 && (current == '!' || current == '<' || current == '>')) {
+          return -2;
+        } else if (depth == 0 && current == '=') {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    private static String literal(String value) {
+      if (value.length() < 2) {
+        return null;
+      }
+      char quote = value.charAt(0);
+      if ((quote != '\'' && quote != '"') || value.charAt(value.length() - 1) != quote
+          || value.indexOf(quote, 1) != value.length() - 1) {
+        return null;
+      }
+      return value.substring(1, value.length() - 1);
+    }
+  }
+
+  private static class Evaluation {
+
+    private final Expression expression;
+    // Owner of the selected nodes, null when only testing
+    private final Document owner;
+    // For each open element, the number of steps matched by it and its ancestors
+    private final Deque<BitSet> states = new ArrayDeque<>();
+    private final List<Node> nodes = new ArrayList<>();
+    private boolean found = false;
+
+    private Evaluation(Expression expression, Document owner) {
+      this.expression = expression;
+      this.owner = owner;
+      BitSet document = new BitSet();
+      document.set(0);
+      states.push(document);
+    }
+
+    private boolean selectsElement() {
+      return states.peek().get(expression.steps.size());
+    }
+
+    private BitSet next(XMLStreamReader reader) {
+      BitSet parent = states.peek();
+      BitSet next = new BitSet();
+      for (int matched = parent.nextSetBit(0); matched >= 0 && matched < expression.steps.size();
+          matched = parent.nextSetBit(matched + 1)) {
+        Step step = expression.steps.get(matched);
+        if (step.matches(reader)) {
+          next.set(matched + 1);
+        }
+        if (step.descendant) {
+          next.set(matched);
+        }
+      }
+      return next;
+    }
+
+    private void value(String value, Node node) {
+      if (owner != null) {
+        nodes.add(node);
+      } else if (expression.literal == null || expression.literal.equals(value)) {
+        found = true;
+      }
+    }
+  }
+
+  // Copy of an element being streamed, either as a DOM tree or as its string value
+  private static class Capture {
+
+    private final int depth;
+    private final Consumer<String> onEnd;
+    private Node current;
+    private final StringBuilder text = new StringBuilder();
+
+    private Capture(int depth, Node root, Consumer<String> onEnd) {
+      this.depth = depth;
+      this.current = root;
+      this.onEnd = onEnd;
+    }
+  }
+
+  private static class Walker {
+
+    private final List<Evaluation> evaluations;
+    private final List<Capture> captures = new ArrayList<>();
+    private final StringBuilder xPathText = new StringBuilder();
+    private int depth = 0;
+
+    private Walker(List<Evaluation> evaluations) {
+      this.evaluations = evaluations;
+    }
+
+    private boolean allFound() {
+      for (Evaluation evaluation : evaluations) {
+        if (!evaluation.found) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void startElement(XMLStreamReader reader) {
+      depth++;
+      String name = qualifiedName(reader.getPrefix(), reader.getLocalName());
+      for (Capture capture : captures) {
+        if (capture.current != null) {
+          Element child = copy(capture.current.getOwnerDocument(), name, reader);
+          capture.current.appendChild(child);
+          capture.current = child;
+        }
+      }
+
+      for (Evaluation evaluation : evaluations) {
+        BitSet next = evaluation.found ? new BitSet() : evaluation.next(reader);
+        evaluation.states.push(next);
+        if (!next.get(evaluation.expression.steps.size())) {
+          continue;
+        }
+        if (evaluation.expression.target == Target.ELEMENT) {
+          selectElement(evaluation, name, reader);
+        } else if (evaluation.expression.target == Target.ATTRIBUTE) {
+          selectAttributes(evaluation, reader);
+        }
+      }
+    }
+
+    private void selectElement(Evaluation evaluation, String name, XMLStreamReader reader) {
+      if (evaluation.owner != null) {
+        Element element = copy(evaluation.owner, name, reader);
+        evaluation.nodes.add(element);
+        captures.add(new Capture(depth, element, null));
+      } else if (evaluation.expression.literal == null) {
+        evaluation.found = true;
+      } else {
+        // The string value of the element is only known at its end
+        captures.add(new Capture(depth, null, value -> evaluation.value(value, null)));
+      }
+    }
+
+    // Attributes are selected by name order, as DOM documents keep them
+    private void selectAttributes(Evaluation evaluation, XMLStreamReader reader) {
+      Map<String, String> attributes = new TreeMap<>();
+      for (int i = 0; i < reader.getAttributeCount(); i++) {
+        String attributeName = reader.getAttributeLocalName(i);
+        if (evaluation.expression.attribute == null || evaluation.expression.attribute.equals(attributeName)) {
+          attributes.put(qualifiedName(reader.getAttributePrefix(i), attributeName), reader.getAttributeValue(i));
+        }
+      }
+      attributes.forEach((name, value) -> {
+        Attr attribute = null;
+        if (evaluation.owner != null) {
+          attribute = evaluation.owner.createAttribute(name);
+          attribute.setValue(value);
+        }
+        evaluation.value(value, attribute);
+      });
+    }
+
+    private void endElement() {
+      Iterator<Capture> iterator = captures.iterator();
+      while (iterator.hasNext()) {
+        Capture capture = iterator.next();
+        if (capture.depth == depth) {
+          iterator.remove();
+          if (capture.onEnd != null) {
+            capture.onEnd.accept(capture.text.toString());
+          }
+        } else if (capture.current != null) {
+          capture.current = capture.current.getParentNode();
+        }
+      }
+      for (Evaluation evaluation : evaluations) {
+        evaluation.states.pop();
+      }
+      depth--;
+    }
+
+    // Text and CDATA sections are copied as separate DOM nodes, but make a single XPath text node
+    private void text(String text, boolean cdata) {
+      if (depth == 0) {
+        return;
+      }
+      capture(node -> node.appendChild(cdata ? node.getOwnerDocument().createCDATASection(text)
+                                             : node.getOwnerDocument().createTextNode(text)));
+      for (Capture capture : captures) {
+        capture.text.append(text);
+      }
+      xPathText.append(text);
+    }
+
+    private void endText() {
+      if (xPathText.length() == 0) {
+        return;
+      }
+      String text = xPathText.toString();
+      xPathText.setLength(0);
+      for (Evaluation evaluation : evaluations) {
+        if (!evaluation.found && evaluation.expression.target == Target.TEXT && evaluation.selectsElement()) {
+          evaluation.value(text, evaluation.owner == null ? null : evaluation.owner.createTextNode(text));
+        }
+      }
+    }
+
+    // Appends a node to the DOM copies in progress
+    private void capture(Consumer<Node> append) {
+      for (Capture capture : captures) {
+        if (capture.current != null) {
+          append.accept(capture.current);
+        }
+      }
+    }
+
+    private static Element copy(Document owner, String name, XMLStreamReader reader) {
+      Element element = owner.createElement(name);
+      // Namespace declarations are plain attributes in the non namespace aware documents used so far
+      for (int i = 0; i < reader.getNamespaceCount(); i++) {
+        String prefix = reader.getNamespacePrefix(i);
+        element.setAttribute(prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix,
+                             reader.getNamespaceURI(i));
+      }
+      for (int i = 0; i < reader.getAttributeCount(); i++) {
+        element.setAttribute(qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                             reader.getAttributeValue(i));
+      }
+      return element;
+    }
+  }
+}
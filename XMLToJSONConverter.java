@@ -0,0 +1,558 @@
+/*
+ * Copyright (c) Experian, 2020. All rights reserved.
+ */
+package com.experian.automation.helpers;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming conversion of XML files to JSON, following the rules of org.json XML.toJSONObject.
+ * <p>
+ * Attributes and child elements become fields, text becomes a "content" field and elements with text only become
+ * values. Repeated names become arrays, and values are converted to booleans, numbers and null unless strings are
+ * kept. The XML is read once with a StAX reader. Whether a name is repeated is only known once its element ends, so
+ * each open element collects the serialized values of its fields by name; the values are kept in memory up to a small
+ * size per field and appended to a temporary file beyond it. A finished element is moved into its parent by reference
+ * to the ranges it spilled, so each byte is written to the temporary file at most once whatever the nesting depth, and
+ * read back once when the result is written. Memory therefore depends on the nesting depth and the number of distinct
+ * names, plus one range per spilled block, not on the document size.
+ * <p>
+ * Example: new XMLToJSONConverter(false).convert("C:/Temp/file.xml", "C:/Temp/file.json")
+ */
+public class XMLToJSONConverter {
+
+  private static final String CONTENT = "content";
+  private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+  // Values of a field kept in memory before they are spilled to the temporary file
+  private static final int SPILL_SIZE = 64 * 1024;
+
+  private static final XMLInputFactory inputFactory = createInputFactory();
+  private static final JsonFactory jsonFactory = new ObjectMapper().getFactory();
+  private static final JsonNodeFactory nodeFactory = JsonNodeFactory.instance;
+
+  private final boolean keepStrings;
+
+  // Serializes single values and names as compact JSON
+  private final ByteArrayOutputStream scratch = new ByteArrayOutputStream();
+  private JsonGenerator scratchGenerator;
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    // Prefixed names and namespace declarations are kept as written, as org.json does
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    if (factory.isPropertySupported(REPORT_CDATA)) {
+      factory.setProperty(REPORT_CDATA, true);
+    }
+    return factory;
+  }
+
+  /**
+   * Instantiates a new XML to JSON converter.
+   *
+   * @param keepStrings true to keep all the values as strings
+   */
+  public XMLToJSONConverter(boolean keepStrings) {
+    this.keepStrings = keepStrings;
+  }
+
+  /**
+   * Converts an XML file to a JSON file.
+   *
+   * @param xmlFile  The full path to the XML (e.g C:/Temp/file.xml)
+   * @param jsonFile The full path to the JSON file which should be created (e.g C:/Temp/file.json)
+   * @throws IOException the io exception
+   */
+  public void convert(String xmlFile, String jsonFile) throws IOException {
+    try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(Paths.get(jsonFile)))) {
+      convert(xmlFile, output);
+    }
+  }
+
+  /**
+   * Converts an XML file to JSON written to a stream, which is left open.
+   *
+   * @param xmlFile The full path to the XML (e.g C:/Temp/file.xml)
+   * @param output  the output stream
+   * @throws IOException the io exception
+   */
+  public void convert(String xmlFile, OutputStream output) throws IOException {
+    try (SpillFile file = new SpillFile()) {
+      Spill document = new Spill(file);
+      read(xmlFile, document, file);
+
+      // The compact JSON is copied token by token to pretty print it
+      try (InputStream input = document.inputStream();
+          JsonParser parser = jsonFactory.createParser(input);
+          JsonGenerator generator = jsonFactory.createGenerator(output, JsonEncoding.UTF8)) {
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.useDefaultPrettyPrinter();
+        parser.nextToken();
+        generator.copyCurrentStructure(parser);
+      }
+    }
+  }
+
+  // Writes the document as compact JSON
+  private void read(String xmlFile, Spill document, SpillFile file) throws IOException {
+    Deque<Element> open = new ArrayDeque<>();
+
+    try (Tokenizer tokens = new Tokenizer(xmlFile);
+        JsonGenerator generator = jsonFactory.createGenerator(scratch, JsonEncoding.UTF8)) {
+      generator.setRootValueSeparator(null);
+      scratchGenerator = generator;
+
+      // The document itself is an object holding the root element
+      open.push(new Element(null, file));
+      for (Token token = tokens.next(); token.type != Token.END_DOCUMENT; token = tokens.next()) {
+        if (token.type == Token.START) {
+          Element element = new Element(token.name, file);
+          for (String[] attribute : token.attributes) {
+            element.add(attribute[0], false).write(serialize(value(attribute[1], false)));
+          }
+          open.push(element);
+        } else if (token.type == Token.TEXT) {
+          open.peek().add(CONTENT, false).write(serialize(value(token)));
+        } else if (open.size() > 1) {
+          Element element = open.pop();
+          element.writeValue(open.peek().add(element.name, element.isArrayValue()), this);
+        } else {
+          throw new IOException("Unexpected end of XML document");
+        }
+      }
+      if (open.size() > 1) {
+        throw new IOException("Unexpected end of XML document");
+      }
+      open.peek().writeObject(document, this);
+    } finally {
+      scratchGenerator = null;
+      scratch.reset();
+    }
+  }
+
+  private byte[] serialize(JsonNode value) throws IOException {
+    scratchGenerator.writeTree(value);
+    return flushScratch();
+  }
+
+  private byte[] serialize(String name) throws IOException {
+    scratchGenerator.writeString(name);
+    return flushScratch();
+  }
+
+  private byte[] flushScratch() throws IOException {
+    scratchGenerator.flush();
+    byte[] bytes = scratch.toByteArray();
+    scratch.reset();
+    return bytes;
+  }
+
+  private JsonNode value(Token text) {
+    return value(text.text, text.cdata);
+  }
+
+  // Same conversion as org.json stringToValue; CDATA sections are always kept as strings
+  private JsonNode value(String text, boolean cdata) {
+    if (keepStrings || cdata || text.isEmpty()) {
+      return nodeFactory.textNode(text);
+    }
+    if ("true".equalsIgnoreCase(text) || "false".equalsIgnoreCase(text)) {
+      return nodeFactory.booleanNode(Boolean.parseBoolean(text.toLowerCase()));
+    }
+    if ("null".equalsIgnoreCase(text)) {
+      return nodeFactory.nullNode();
+    }
+    char initial = text.charAt(0);
+    if ((initial >= '0' && initial <= '9') || initial == '-') {
+      try {
+        if (text.indexOf('.') > -1 || text.indexOf('e') > -1 || text.indexOf('E') > -1 || "-0".equals(text)) {
+          double number = Double.parseDouble(text);
+          if (!Double.isInfinite(number) && !Double.isNaN(number)) {
+            return nodeFactory.numberNode(number);
+          }
+        } else {
+          long number = Long.parseLong(text);
+          if (text.equals(Long.toString(number))) {
+            return nodeFactory.numberNode(number);
+          }
+        }
+      } catch (NumberFormatException e) {
+        // not a number, kept as a string
+      }
+    }
+    return nodeFactory.textNode(text);
+  }
+
+  // An open element and the serialized values of its fields, by name in order of appearance
+  private static class Element {
+
+    private final String name;
+    private final SpillFile file;
+    private final Map<String, Field> fields = new LinkedHashMap<>();
+
+    private Element(String name, SpillFile file) {
+      this.name = name;
+      this.file = file;
+    }
+
+    // Starts the next value of a field, accumulating values like org.json
+    private Spill add(String fieldName, boolean arrayValue) throws IOException {
+      Field field = fields.get(fieldName);
+      if (field == null) {
+        field = new Field(arrayValue, file);
+        fields.put(fieldName, field);
+      } else {
+        field.values.write(',');
+      }
+      field.count++;
+      return field.values;
+    }
+
+    // An element with text only is a value, an array of values for mixed text and CDATA
+    private boolean isTextOnly() {
+      return fields.size() == 1 && fields.containsKey(CONTENT);
+    }
+
+    private boolean isArrayValue() {
+      return isTextOnly() && fields.get(CONTENT).isArray();
+    }
+
+    // Moves the element into its parent, its fields are left empty
+    private void writeValue(Spill output, XMLToJSONConverter converter) throws IOException {
+      if (fields.isEmpty()) {
+        output.write('"');
+        output.write('"');
+      } else if (isTextOnly()) {
+        fields.get(CONTENT).moveTo(output);
+      } else {
+        writeObject(output, converter);
+      }
+    }
+
+    private void writeObject(Spill output, XMLToJSONConverter converter) throws IOException {
+      output.write('{');
+      boolean first = true;
+      for (Map.Entry<String, Field> field : fields.entrySet()) {
+        if (!first) {
+          output.write(',');
+        }
+        first = false;
+        output.write(converter.serialize(field.getKey()));
+        output.write(':');
+        field.getValue().moveTo(output);
+      }
+      output.write('}');
+    }
+  }
+
+  private static class Field {
+
+    // org.json wraps an array value in an array when accumulating it
+    private final boolean firstIsArray;
+    private final Spill values;
+    private int count = 0;
+
+    private Field(boolean firstIsArray, SpillFile file) {
+      this.firstIsArray = firstIsArray;
+      this.values = new Spill(file);
+    }
+
+    private boolean isArray() {
+      return count > 1 || firstIsArray;
+    }
+
+    private void moveTo(Spill output) throws IOException {
+      if (isArray()) {
+        output.write('[');
+      }
+      output.append(values);
+      if (isArray()) {
+        output.write(']');
+      }
+    }
+  }
+
+  // Bytes kept in memory up to SPILL_SIZE, then appended to the spill file as ranges of it
+  private static class Spill extends OutputStream {
+
+    private final SpillFile file;
+    private final ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    // Offset and length of the ranges of the spill file holding the first bytes, in order
+    private final List<long[]> ranges = new ArrayList<>();
+
+    private Spill(SpillFile file) {
+      this.file = file;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      if (memory.size() + length > SPILL_SIZE) {
+        spill();
+        if (length > SPILL_SIZE) {
+          addRange(file.append(bytes, offset, length), length);
+          return;
+        }
+      }
+      memory.write(bytes, offset, length);
+    }
+
+    // Moves the content of another spill to the end of this one; the ranges it spilled are not copied
+    private void append(Spill other) throws IOException {
+      if (!other.ranges.isEmpty()) {
+        spill();
+        for (long[] range : other.ranges) {
+          addRange(range[0], range[1]);
+        }
+        other.ranges.clear();
+      }
+      other.memory.writeTo(this);
+      other.memory.reset();
+    }
+
+    private void spill() throws IOException {
+      if (memory.size() > 0) {
+        byte[] bytes = memory.toByteArray();
+        addRange(file.append(bytes, 0, bytes.length), bytes.length);
+        memory.reset();
+      }
+    }
+
+    private void addRange(long offset, long length) {
+      long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+      if (last != null && last[0] + last[1] == offset) {
+        last[1] += length;
+      } else {
+        ranges.add(new long[]{offset, length});
+      }
+    }
+
+    private InputStream inputStream() {
+      InputStream tail = new ByteArrayInputStream(memory.toByteArray());
+      return new InputStream() {
+        private int range = 0;
+        private long position = ranges.isEmpty() ? 0L : ranges.get(0)[0];
+
+        @Override
+        public int read() throws IOException {
+          byte[] single = new byte[1];
+          return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+          while (range < ranges.size()) {
+            long[] current = ranges.get(range);
+            long left = current[0] + current[1] - position;
+            if (left > 0) {
+              int read = file.read(position, bytes, offset, (int) Math.min(length, left));
+              position += read;
+              return read;
+            }
+            range++;
+            if (range < ranges.size()) {
+              position = ranges.get(range)[0];
+            }
+          }
+          return tail.read(bytes, offset, length);
+        }
+      };
+    }
+  }
+
+  // Append-only temporary file shared by the spills of a conversion, created on the first spill and deleted on close
+  private static class SpillFile implements Closeable {
+
+    private Path path;
+    private FileChannel channel;
+    private long size = 0L;
+
+    // Returns the offset the bytes were written at
+    private long append(byte[] bytes, int offset, int length) throws IOException {
+      if (channel == null) {
+        path = Files.createTempFile("xml2json", ".tmp");
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      }
+      long start = size;
+      ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+      while (buffer.hasRemaining()) {
+        size += channel.write(buffer, size);
+      }
+      return start;
+    }
+
+    private int read(long position, byte[] bytes, int offset, int length) throws IOException {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+      int read = 0;
+      while (buffer.hasRemaining()) {
+        int count = channel.read(buffer, position + read);
+        if (count == -1) {
+          throw new IOException("Unexpected end of " + path);
+        }
+        read += count;
+      }
+      return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (path != null) {
+        try {
+          channel.close();
+        } finally {
+          Files.deleteIfExists(path);
+          path = null;
+        }
+      }
+    }
+  }
+
+  private static class Token {
+
+    private static final int START = 0;
+    private static final int END = 1;
+    private static final int TEXT = 2;
+    private static final int END_DOCUMENT = 3;
+
+    private final int type;
+    private String name;
+    private List<String[]> attributes = Collections.emptyList();
+    private String text;
+    private boolean cdata;
+
+    private Token(int type) {
+      this.type = type;
+    }
+  }
+
+  // XML events grouped as org.json reads them: text is trimmed and split by comments and CDATA sections
+  private static class Tokenizer implements Closeable {
+
+    private final InputStream input;
+    private final XMLStreamReader reader;
+    private final StringBuilder text = new StringBuilder();
+    private boolean replay = false;
+
+    private Tokenizer(String xmlFile) throws IOException {
+      input = new BufferedInputStream(Files.newInputStream(Paths.get(xmlFile)));
+      try {
+        reader = inputFactory.createXMLStreamReader(input);
+      } catch (XMLStreamException e) {
+        input.close();
+        throw new IOException("Could not read XML file " + xmlFile, e);
+      }
+    }
+
+    private Token next() throws IOException {
+      try {
+        while (true) {
+          int type = replay ? reader.getEventType() : next(reader);
+          replay = false;
+
+          if (type == XMLStreamConstants.CHARACTERS || type == XMLStreamConstants.SPACE) {
+            text.append(reader.getText());
+            continue;
+          }
+          if (text.length() > 0) {
+            String trimmed = text.toString().trim();
+            text.setLength(0);
+            if (!trimmed.isEmpty()) {
+              replay = true;
+              return text(trimmed, false);
+            }
+          }
+
+          switch (type) {
+            case XMLStreamConstants.START_ELEMENT:
+              return start();
+            case XMLStreamConstants.END_ELEMENT:
+              return new Token(Token.END);
+            case XMLStreamConstants.CDATA:
+              if (reader.getTextLength() > 0) {
+                return text(reader.getText(), true);
+              }
+              break;
+            case XMLStreamConstants.END_DOCUMENT:
+              return new Token(Token.END_DOCUMENT);
+            default:
+              break;
+          }
+        }
+      } catch (XMLStreamException e) {
+        throw new IOException("Could not read XML document", e);
+      }
+    }
+
+    private static int next(XMLStreamReader reader) throws XMLStreamException {
+      return reader.hasNext() ? reader.next() : XMLStreamConstants.END_DOCUMENT;
+    }
+
+    private Token start() {
+      Token token = new Token(Token.START);
+      token.name = reader.getLocalName();
+      if (reader.getAttributeCount() > 0) {
+        token.attributes = new ArrayList<>();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+          String prefix = reader.getAttributePrefix(i);
+          String name = prefix == null || prefix.isEmpty() ? reader.getAttributeLocalName(i)
+              : prefix + ":" + reader.getAttributeLocalName(i);
+          token.attributes.add(new String[]{name, reader.getAttributeValue(i)});
+        }
+      }
+      return token;
+    }
+
+    private static Token text(String value, boolean cdata) {
+      Token token = new Token(Token.TEXT);
+      token.text = value;
+      token.cdata = cdata;
+      return token;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        reader.close();
+      } catch (XMLStreamException e) {
+        throw new IOException(e);
+      } finally {
+        input.close();
+      }
+    }
+  }
+}
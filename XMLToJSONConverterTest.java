@@ -0,0 +1,64 @@
+package com.experian.automation.helpers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.json.XML;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class XMLToJSONConverterTest {
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  @Test
+  void nested() throws IOException {
+    assertSameAsOrgJson("<a><b><c id=\"1\"><d>true</d><e>2.5</e></c></b><f/><g></g></a>");
+  }
+
+  @Test
+  void repeated() throws IOException {
+    assertSameAsOrgJson("<list><item>1</item><other>x</other><item><v>2</v></item><item>null</item>"
+        + "<entry><![CDATA[a]]><![CDATA[b]]></entry><entry>c</entry></list>");
+  }
+
+  @Test
+  void mixedContent() throws IOException {
+    assertSameAsOrgJson("<p lang=\"en\">Hello <b>world</b> and <!-- note --> <i>more</i> text<![CDATA[ <raw> ]]></p>");
+  }
+
+  @Test
+  void largeNestedAndRepeated() throws IOException {
+    // Large enough for the values to be spilled to disk at several levels
+    StringBuilder xml = new StringBuilder("<root>");
+    for (int i = 0; i < 200; i++) {
+      xml.append("<group id=\"").append(i).append("\"><level><items>");
+      for (int j = 0; j < 50; j++) {
+        xml.append("<item><name>item ").append(j).append("</name><value>").append(i * j).append("</value></item>");
+      }
+      xml.append("</items></level></group><separator>").append(i).append("</separator>");
+    }
+    xml.append("<single><deep><deeper>").append(new String(new char[100000]).replace('\0', 'x'))
+        .append("</deeper></deep></single></root>");
+    assertSameAsOrgJson(xml.toString());
+  }
+
+  private void assertSameAsOrgJson(String xml) throws IOException {
+    Path file = Files.createTempFile("converter", ".xml");
+    try {
+      Files.write(file, xml.getBytes(StandardCharsets.UTF_8));
+      for (boolean keepStrings : new boolean[]{false, true}) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new XMLToJSONConverter(keepStrings).convert(file.toString(), output);
+
+        Assert.assertEquals(mapper.readTree(output.toByteArray()),
+                            mapper.readTree(XML.toJSONObject(xml, keepStrings).toString()));
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
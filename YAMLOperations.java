@@ -3,17 +3,52 @@
  */
 package com.experian.automation.helpers;
 
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator.Feature;
 import com.fasterxml.jackson.dataformat.yaml.snakeyaml.Yaml;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import net.minidev.json.JSONValue;
 
 /**
  * The type Yaml operations.
+ * <p>
+ * Parsed YAML files are cached by FixtureCache, so a file queried several times is only parsed again once it
+ * changes. Paths are evaluated on the parsed document without converting it to JSON.
  */
 public class YAMLOperations {
 
+  private static final String YAML_DOCUMENT = "yamlDocument";
+
+  // Block mapping entry: indentation, key (plain or quoted) and the rest of the line
+  private static final Pattern MAPPING_LINE = Pattern.compile(
+      "^( *)(\"[^\"]*\"|'[^']*'|[^\\s#'\"\\[\\]{}&*!|>%@`,-][^#]*?)[ \\t]*:(?:[ \\t]+(.*)|[ \\t]*)$");
+  private static final Pattern SEQUENCE_LINE = Pattern.compile("^( *)-(?:[ \\t].*)?$");
+
+  private static final ObjectMapper yamlMapper = new ObjectMapper(
+      new YAMLFactory().disable(Feature.WRITE_DOC_START_MARKER));
+
   /**
    * Convert to json string.
    *
@@ -36,10 +71,286 @@ public class YAMLOperations {
    * @throws IOException the io exception
    */
   public String getValueFromYAMLFile(String filePath, String yamlPath) throws IOException {
-    String yamlString = new String(Files.readAllBytes(Paths.get(filePath)));
-    String jsonString = convertToJson(yamlString);
-    JSONOperations jsonOperations = new JSONOperations();
+    return toString(document(filePath).read(yamlPath));
+  }
+
+  /**
+   * Gets several values from a yaml file, parsing it only once.
+   *
+   * @param filePath  the file path
+   * @param yamlPaths the yaml paths
+   * @return the values by yaml path, in the order of the paths
+   * @throws IOException the io exception
+   */
+  public Map<String, String> getValuesFromYAMLFile(String filePath, Collection<String> yamlPaths)
+      throws IOException {
+    DocumentContext document = document(filePath);
+    Map<String, String> values = new LinkedHashMap<>();
+    for (String yamlPath : yamlPaths) {
+      values.put(yamlPath, toString(document.read(yamlPath)));
+    }
+    return values;
+  }
+
+  /**
+   * Updates values in a yaml file, which is written once for all the properties.
+   * <p>
+   * The properties are dot separated paths (e.g. server.port) mapped to string values. When all the paths exist as
+   * single line values, only those values are rewritten and the comments and layout of the file are kept. Otherwise
+   * the file is read as a tree, missing mappings are created and the whole file is written again.
+   *
+   * @param filePath   the file path
+   * @param properties the properties
+   * @throws IOException the io exception
+   */
+  public void updateYAMLFile(String filePath, Map<String, String> properties) throws IOException {
+    Path target = Paths.get(filePath).toAbsolutePath();
+    Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+
+    try {
+      String yaml = new String(Files.readAllBytes(target), StandardCharsets.UTF_8);
+      String updated = updateLines(yaml, properties);
+      if (updated != null) {
+        Files.write(temp, updated.getBytes(StandardCharsets.UTF_8));
+      } else {
+        updateTree(target, temp, properties);
+      }
+      FSOperations.moveAtomically(temp, target);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static DocumentContext document(String filePath) throws IOException {
+    // The document is shared between callers and only read
+    return FixtureCache.parsed(filePath, YAML_DOCUMENT,
+        content -> JsonPath.parse(new Yaml().load(new String(content, StandardCharsets.UTF_8))));
+  }
+
+  // Same text as the value read back from the JSON conversion
+  private static String toString(Object value) {
+    if (value == null) {
+      return "null";
+    }
+    return value instanceof Map || value instanceof List ? JSONValue.toJSONString(value) : value.toString();
+  }
+
+  // Replaces the values in place; null when a path is missing or its value spans several lines
+  private static String updateLines(String yaml, Map<String, String> properties) {
+    Map<List<String>, String> values = new LinkedHashMap<>();
+    properties.forEach((key, value) -> values.put(Arrays.asList(key.split("\\.")), value));
+    Set<List<String>> found = new HashSet<>();
+
+    String[] lines = yaml.split("(?<=\n)", -1);
+    // Indentation and key of the enclosing mappings; sequence items have no key
+    Deque<Object[]> parents = new ArrayDeque<>();
+    // Indentation of a key whose value goes on over the more indented lines that follow
+    int valueIndent = -1;
+    boolean content = false;
+
+    for (int i = 0; i < lines.length; i++) {
+      String line = stripLineEnd(lines[i]);
+      String trimmed = line.trim();
+      int indent = indentation(line);
+
+      if (valueIndent >= 0 && (trimmed.isEmpty() || indent > valueIndent)) {
+        continue;
+      }
+      valueIndent = -1;
+      if (trimmed.isEmpty() || trimmed.startsWith("#") || line.startsWith("%")) {
+        continue;
+      }
+      if (line.startsWith("---") || line.startsWith("...")) {
+        // Only single document files are edited in place
+        if (content) {
+          return null;
+        }
+        continue;
+      }
+      content = true;
+
+      while (!parents.isEmpty() && (int) parents.peek()[0] >= indent) {
+        parents.pop();
+      }
+      if (SEQUENCE_LINE.matcher(line).matches()) {
+        if (isMultiLineQuoted(line.substring(indent + 1).trim())) {
+          return null;
+        }
+        parents.push(new Object[]{indent, null});
+        continue;
+      }
+      Matcher matcher = MAPPING_LINE.matcher(line);
+      if (!matcher.matches()) {
+        continue;
+      }
+
+      String key = unquote(matcher.group(2));
+      List<String> path = path(parents, key);
+      parents.push(new Object[]{indent, key});
+      String rest = matcher.group(3) == null ? "" : matcher.group(3);
+      if (isMultiLineQuoted(rest)) {
+        return null;
+      }
+      // Block scalars and values continued on the next lines; anchors and tags may be followed by nested mappings
+      if (!rest.isEmpty() && !rest.startsWith("#") && "&!".indexOf(rest.charAt(0)) < 0) {
+        valueIndent = indent;
+      }
+
+      if (path == null || !values.containsKey(path)) {
+        continue;
+      }
+      // Nested mappings and values continued on the next lines are left to the tree
+      int valueEnd = scalarEnd(rest);
+      if (valueEnd < 0 || hasChildren(lines, i, indent)) {
+        return null;
+      }
+      int valueStart = matcher.group(3) == null ? line.length() : matcher.start(3);
+      String comment = rest.substring(valueEnd);
+      lines[i] = line.substring(0, valueStart) + (matcher.group(3) == null ? " " : "") + quote(values.get(path))
+          + (valueEnd == 0 && !comment.isEmpty() ? " " : "") + comment + lines[i].substring(line.length());
+      found.add(path);
+    }
+
+    return found.size() == values.size() ? String.join("", lines) : null;
+  }
+
+  private static List<String> path(Deque<Object[]> parents, String key) {
+    List<String> path = new ArrayList<>();
+    for (Object[] parent : parents) {
+      if (parent[1] == null) {
+        return null;
+      }
+      path.add(0, (String) parent[1]);
+    }
+    path.add(key);
+    return path;
+  }
+
+  // Length of a single line scalar at the start of a value, 0 when there is none and -1 for other values
+  private static int scalarEnd(String value) {
+    if (value.isEmpty() || value.startsWith("#")) {
+      return 0;
+    }
+    char first = value.charAt(0);
+    if (first == '"') {
+      for (int i = 1; i < value.length(); i++) {
+        if (value.charAt(i) == '\\') {
+          i++;
+        } else if (value.charAt(i) == '"') {
+          return i + 1;
+        }
+      }
+      return -1;
+    }
+    if (first == '\'') {
+      for (int i = 1; i < value.length(); i++) {
+        if (value.charAt(i) == '\'') {
+          if (i + 1 < value.length() && value.charAt(i + 1) == '\'') {
+            i++;
+          } else {
+            return i + 1;
+          }
+        }
+      }
+      return -1;
+    }
+    if ("[{|>&*!".indexOf(first) >= 0) {
+      return -1;
+    }
+    int comment = value.indexOf(" #");
+    String scalar = comment >= 0 ? value.substring(0, comment) : value;
+    return scalar.replaceAll("\\s+$", "").length();
+  }
+
+  // Quoted scalars continued on the next lines may hold text looking like keys, at any indentation
+  private static boolean isMultiLineQuoted(String value) {
+    Matcher mapping = MAPPING_LINE.matcher(value);
+    String scalar = mapping.matches() ? mapping.group(3) : value;
+    return scalar != null && (scalar.startsWith("\"") || scalar.startsWith("'")) && scalarEnd(scalar) < 0;
+  }
+
+  private static boolean hasChildren(String[] lines, int index, int indent) {
+    for (int i = index + 1; i < lines.length; i++) {
+      String trimmed = lines[i].trim();
+      if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+        return indentation(lines[i]) > indent || trimmed.startsWith("- ") || "-".equals(trimmed);
+      }
+    }
+    return false;
+  }
+
+  private static void updateTree(Path source, Path temp, Map<String, String> properties) throws IOException {
+    JsonNode tree = yamlMapper.readTree(source.toFile());
+
+    for (String key : properties.keySet()) {
+      List<String> nodeList = Arrays.asList(key.split("\\."));
+      ObjectNode node = (ObjectNode) tree;
+
+      for (int i = 0; i < nodeList.size() - 1; i++) {
+        if (node.get(nodeList.get(i)) == null) {
+          node = node.putObject(nodeList.get(i));
+        } else {
+          node = (ObjectNode) node.get(nodeList.get(i));
+        }
+      }
+
+      node.put(nodeList.get(nodeList.size() - 1), properties.get(key));
+    }
+
+    yamlMapper.writer(new DefaultPrettyPrinter()).writeValue(temp.toFile(), tree);
+  }
+
+  private static String stripLineEnd(String line) {
+    int end = line.length();
+    while (end > 0 && (line.charAt(end - 1) == '\n' || line.charAt(end - 1) == '\r')) {
+      end--;
+    }
+    return line.substring(0, end);
+  }
+
+  private static int indentation(String line) {
+    int indent = 0;
+    while (indent < line.length() && line.charAt(indent) == ' ') {
+      indent++;
+    }
+    return indent;
+  }
+
+  private static String unquote(String key) {
+    if (key.length() >= 2 && (key.startsWith("\"") || key.startsWith("'"))) {
+      return key.substring(1, key.length() - 1);
+    }
+    return key;
+  }
 
-    return jsonOperations.evaluateJSONPath(jsonString, yamlPath);
+  // Values are written as double quoted strings, as the tree writer does
+  private static String quote(String value) {
+    StringBuilder quoted = new StringBuilder("\"");
+    for (char c : value.toCharArray()) {
+      switch (c) {
+        case '"':
+          quoted.append("\\\"");
+          break;
+        case '\\':
+          quoted.append("\\\\");
+          break;
+        case '\n':
+          quoted.append("\\n");
+          break;
+        case '\r':
+          quoted.append("\\r");
+          break;
+        case '\t':
+          quoted.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            quoted.append(String.format("\\x%02x", (int) c));
+          } else {
+            quoted.append(c);
+          }
+      }
+    }
+    return quoted.append('"').toString();
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,136 @@
+package com.experian.automation.helpers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class YAMLOperationsTest {
+
+  @Test
+  void inPlaceKeepsComments() throws IOException {
+    String yaml = "# Server settings\n"
+        + "server:\n"
+        + "  # The port\n"
+        + "  port: 8080 # default\n"
+        + "  host: localhost\n"
+        + "  path:\n"
+        + "  name: # not set\n";
+
+    Assert.assertEquals(update(yaml, "server.port", "9090", "server.path", "/api", "server.name", "app"),
+                        "# Server settings\n"
+                            + "server:\n"
+                            + "  # The port\n"
+                            + "  port: \"9090\" # default\n"
+                            + "  host: localhost\n"
+                            + "  path: \"/api\"\n"
+                            + "  name: \"app\" # not set\n");
+  }
+
+  @Test
+  void inPlaceQuotedKeys() throws IOException {
+    String yaml = "\"first\": one\n"
+        + "'second': 'two' # kept\n"
+        + "third: \"th\\\"ree\"\n";
+
+    Assert.assertEquals(update(yaml, "first", "1", "second", "2", "third", "3"),
+                        "\"first\": \"1\"\n"
+                            + "'second': \"2\" # kept\n"
+                            + "third: \"3\"\n");
+  }
+
+  @Test
+  void inPlaceSkipsBlockScalars() throws IOException {
+    String yaml = "description: |\n"
+        + "  port: 1\n"
+        + "\n"
+        + "  more text\n"
+        + "notes: >\n"
+        + "  folded\n"
+        + "port: 2\n";
+
+    Assert.assertEquals(update(yaml, "port", "3"), yaml.replace("port: 2", "port: \"3\""));
+  }
+
+  @Test
+  void inPlaceSkipsSequenceItems() throws IOException {
+    String yaml = "servers:\n"
+        + "  - name: a\n"
+        + "    port: 1\n"
+        + "  - name: b\n"
+        + "    port: 2\n"
+        + "port: 5\n";
+
+    Assert.assertEquals(update(yaml, "port", "6"), yaml.replace("port: 5", "port: \"6\""));
+  }
+
+  @Test
+  void inPlaceKeepsCrlf() throws IOException {
+    Assert.assertEquals(update("a: 1\r\nb: 2 # two\r\n", "b", "3"), "a: 1\r\nb: \"3\" # two\r\n");
+  }
+
+  @Test
+  void inPlaceSkipsContinuationLines() throws IOException {
+    String yaml = "a: some\n"
+        + "  long text\n"
+        + "b: 1\n";
+
+    Assert.assertEquals(update(yaml, "b", "2"), "a: some\n  long text\nb: \"2\"\n");
+  }
+
+  @Test
+  void fallbackForBlockScalarValue() throws IOException {
+    Assert.assertEquals(update("# comment\ntext: |\n  line\nport: 1\n", "text", "new"),
+                        "text: \"new\"\nport: 1\n");
+  }
+
+  @Test
+  void fallbackForSequenceValue() throws IOException {
+    Assert.assertEquals(update("# comment\nhosts:\n  - a\n  - b\nport: 1\n", "hosts", "c"),
+                        "hosts: \"c\"\nport: 1\n");
+  }
+
+  @Test
+  void fallbackForMultiLineValue() throws IOException {
+    Assert.assertEquals(update("a: some\n  long text\nb: 1\n", "a", "short"), "a: \"short\"\nb: 1\n");
+  }
+
+  @Test
+  void fallbackForMissingPath() throws IOException {
+    Assert.assertEquals(update("# comment\nname: x\n", "server.port", "8080"),
+                        "name: \"x\"\nserver:\n  port: \"8080\"\n");
+  }
+
+  @Test
+  void fallbackForCrlf() throws IOException {
+    Assert.assertEquals(update("a: 1\r\nlist:\r\n  - x\r\n", "list", "y"), "a: 1\nlist: \"y\"\n");
+  }
+
+  @Test
+  void fallbackForKeyInsideQuotedContinuation() throws IOException {
+    // b is only text continuing the quoted value of a, so it is added as a new key
+    Assert.assertEquals(update("a: 'x\nb: 1'\nc: 2\n", "b", "3"), "a: \"x b: 1\"\nc: 2\nb: \"3\"\n");
+    Assert.assertEquals(update("s:\n  a: 'x\n  b: 1'\n  c: 2\n", "s.c", "3"),
+                        "s:\n  a: \"x b: 1\"\n  c: \"3\"\n");
+  }
+
+  private String update(String yaml, String... properties) throws IOException {
+    Map<String, String> values = new LinkedHashMap<>();
+    for (int i = 0; i < properties.length; i += 2) {
+      values.put(properties[i], properties[i + 1]);
+    }
+
+    Path file = Files.createTempFile("yaml", ".yml");
+    try {
+      Files.write(file, yaml.getBytes(StandardCharsets.UTF_8));
+      new YAMLOperations().updateYAMLFile(file.toString(), values);
+      return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    } finally {
+      Files.delete(file);
+    }
+  }
+}